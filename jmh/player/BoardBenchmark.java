@@ -0,0 +1,124 @@
+/* BoardBenchmark.java */
+
+package player;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *  JMH benchmarks of the Board hot paths over the positions of positions.txt.
+ *  One operation is a pass over the whole corpus: every position for the
+ *  queries and copies, every valid move of every position for isValidMove
+ *  and the action/undo cases.  Run with -prof gc for the allocation per
+ *  operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BoardBenchmark {
+	private Corpus.Position[] corpus;
+	private final int[] buffer = new int[512];
+	private final Board scratch = new Board();
+
+	@Setup
+	public void load() throws IOException {
+		corpus = Corpus.readDefault();
+	}
+
+	@Benchmark
+	public void listValidMove(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			blackhole.consume(p.board.listValidMove(p.color));
+		}
+	}
+
+	@Benchmark
+	public void generateMoves(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			blackhole.consume(p.board.generateMoves(p.color, buffer));
+		}
+	}
+
+	@Benchmark
+	public void isValidMove(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			for (Move m : p.moves){
+				blackhole.consume(p.board.isValidMove(m, p.color));
+			}
+		}
+	}
+
+	@Benchmark
+	public void actionUndo(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			for (int m : p.packed){
+				p.board.action(m, p.color);
+				p.board.undo(m, p.color);
+			}
+			blackhole.consume(p.board.hash(p.color));
+		}
+	}
+
+	/**
+	 * networkId remembers its answer until the board changes, so it is
+	 * measured after a move; subtract actionUndo for its own cost.
+	 */
+	@Benchmark
+	public void actionNetworkIdUndo(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			for (int m : p.packed){
+				p.board.action(m, p.color);
+				blackhole.consume(p.board.networkId(Cell.BLACK));
+				blackhole.consume(p.board.networkId(Cell.WHITE));
+				p.board.undo(m, p.color);
+			}
+		}
+	}
+
+	@Benchmark
+	public void evaluation(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			blackhole.consume(p.board.evaluation(p.color, 1));
+		}
+	}
+
+	/**
+	 * The ways of giving a searcher its own board, to set against the cost of
+	 * actionUndo.
+	 */
+	@Benchmark
+	public void copyConstructor(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			blackhole.consume(new Board(p.board));
+		}
+	}
+
+	@Benchmark
+	public void copyFrom(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			scratch.copyFrom(p.board);
+			blackhole.consume(scratch.hash(p.color));
+		}
+	}
+
+	@Benchmark
+	public void snapshotRestore(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			scratch.restore(p.board.chips(Cell.BLACK), p.board.chips(Cell.WHITE));
+			blackhole.consume(scratch.hash(p.color));
+		}
+	}
+}
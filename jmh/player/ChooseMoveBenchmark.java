@@ -0,0 +1,90 @@
+/* ChooseMoveBenchmark.java */
+
+package player;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  JMH benchmarks of MachinePlayer.chooseMove, the whole path a game takes.
+ *  chooseMove plays the move it chooses, so every operation gets a fresh
+ *  player, built before the operation from the moves of the next position
+ *  of positions.txt in turn; one operation is one move.
+ *
+ *  fixedDepth uses MachinePlayer(color, depth), which only searches.  full
+ *  uses MachinePlayer(color, depth, 0), which has its own 2^20-slot table,
+ *  the opening book, the proof-number solver and the quiescence search; its
+ *  gc.alloc.rate.norm under -prof gc includes that table, allocated for
+ *  every operation as a game allocates it for every player.  SearcherBenchmark
+ *  measures the search without the player.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChooseMoveBenchmark {
+	@Param({"1", "2", "3"})
+	public int depth;
+
+	private Corpus.Position[] corpus;
+	private int next;
+
+	@Setup
+	public void load() throws IOException {
+		corpus = Corpus.readDefault();
+	}
+
+	/**
+	 * Helper method: the next position of the corpus, round and round
+	 */
+	private Corpus.Position nextPosition(){
+		Corpus.Position p = corpus[next];
+		next = (next + 1) % corpus.length;
+		return p;
+	}
+
+	@State(Scope.Thread)
+	public static class FixedDepthPlayer {
+		MachinePlayer player;
+
+		@Setup(Level.Invocation)
+		public void create(ChooseMoveBenchmark benchmark){
+			Corpus.Position p = benchmark.nextPosition();
+			player = p.replay(new MachinePlayer(p.color, benchmark.depth));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class FullPlayer {
+		MachinePlayer player;
+
+		@Setup(Level.Invocation)
+		public void create(ChooseMoveBenchmark benchmark){
+			Corpus.Position p = benchmark.nextPosition();
+			player = p.replay(new MachinePlayer(p.color, benchmark.depth, 0));
+		}
+	}
+
+	@Benchmark
+	public Move fixedDepth(FixedDepthPlayer state){
+		return state.player.chooseMove();
+	}
+
+	@Benchmark
+	public Move full(FullPlayer state){
+		return state.player.chooseMove();
+	}
+}
@@ -0,0 +1,52 @@
+/* SearcherBenchmark.java */
+
+package player;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ *  JMH benchmark of the search alone: a Searcher searches every position of
+ *  positions.txt to a fixed depth, each from an empty 2^16-slot table.  There
+ *  is no opening book, solver or MachinePlayer around it; one operation is a
+ *  pass over the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearcherBenchmark {
+	@Param({"1", "2", "3"})
+	public int depth;
+
+	private Corpus.Position[] corpus;
+	private final TranspositionTable table = new TranspositionTable(16, TranspositionTable.DEPTH_PREFERRED);
+	private final Searcher[] searchers = {new Searcher(Cell.BLACK), new Searcher(Cell.WHITE)};
+
+	@Setup
+	public void load() throws IOException {
+		corpus = Corpus.readDefault();
+	}
+
+	@Benchmark
+	public void search(Blackhole blackhole){
+		for (Corpus.Position p : corpus){
+			table.clear();
+			searchers[p.color].setUp(p.board, table, depth, depth, 0);
+			blackhole.consume(searchers[p.color].search());
+		}
+	}
+}
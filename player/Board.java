@@ -1,12 +1,113 @@
 /* Board.java */
 
 package player;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+import java.util.Random;
+
 import list.*;
 
+/**
+ * An 8x8 Network board kept as two bitboards, one per color.  Square (x, y)
+ * is bit x*8 + y, so scanning the bits from low to high visits the squares in
+ * the same order as the nested x/y loops of the old Cell[][] board.
+ */
 public class Board {
-	private Cell[][] current; 
-	private int numOfBlack; 
-	private int numOfWhite; 
+	private final static long DEAD = bit(0, 0) | bit(0, 7) | bit(7, 0) | bit(7, 7);
+	private final static long BLACK_GOALS = 0x8181818181818181L; // y == 0 or y == 7
+	private final static long WHITE_GOALS = 0xFF000000000000FFL; // x == 0 or x == 7
+	private final static long[] NEIGHBORS = new long[64];
+	private final static long[] START_GOAL = {0x0101010101010101L, 0x00000000000000FFL};
+	private final static long[] END_GOAL = {0x8080808080808080L, 0xFF00000000000000L};
+
+	/**
+	 * The first four directions are the axes, and direction d + 4 is the
+	 * opposite of direction d.  The first four point to higher squares, so the
+	 * nearest square of a mask along them is its lowest bit, and along the
+	 * others its highest.  RAYS[d][sq] holds the squares seen from sq in
+	 * direction d on an empty board, and BETWEEN[a][b] the squares strictly
+	 * between two squares on a line, or 0 if they are not on one.
+	 * DIRECTION[a][b] is the direction from a to b, for squares on a line.
+	 */
+	private final static int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}, {-1, 0}, {0, -1}, {-1, -1}, {-1, 1}};
+	private final static long[][] RAYS = new long[8][64];
+	private final static long[][] BETWEEN = new long[64][64];
+	private final static byte[][] DIRECTION = new byte[64][64];
+	private final static int MAX_CHIPS = 10;
+	private final static long[][] ZOBRIST = new long[2][64];
+
+	/**
+	 * The evaluation is a weighted sum of FEATURES features (see features).
+	 * Without a weight file it is the hand-tuned sum of DEFAULT_WEIGHTS, kept
+	 * exactly as the old board computed it; the JVM option
+	 * -Dplayer.weights=file loads a weight set from Tuner instead.
+	 */
+	protected final static int FEATURES = 4;
+	protected final static String[] FEATURE_NAMES = {"interior", "goalArea", "goalChips", "bothGoals"};
+	protected final static double[] DEFAULT_WEIGHTS = {1, 1.5, 0, 0};
+	private final static double[] WEIGHTS = loadWeights();
+	private final static long WHITE_TO_MOVE;
+
+	/** The square masks of the four reflections: none, x, y and both. */
+	protected final static int[] SYMMETRIES = {0, 0x38, 0x07, 0x3F};
+
+	static {
+		Random random = new Random(0x4E6574776F726BL);
+		for (int sq = 0; sq < 64; sq++){
+			ZOBRIST[Cell.BLACK][sq] = random.nextLong();
+			ZOBRIST[Cell.WHITE][sq] = random.nextLong();
+		}
+		WHITE_TO_MOVE = random.nextLong();
+		for (int sq = 0; sq < 64; sq++){
+			int x = sq >>> 3;
+			int y = sq & 7;
+			for (int i = x - 1; i <= x + 1; i++){
+				for (int j = y - 1; j <= y + 1; j++){
+					if (i >= 0 && i <= 7 && j >= 0 && j <= 7 && (i != x || j != y)){
+						NEIGHBORS[sq] |= bit(i, j);
+					}
+				}
+			}
+			for (int d = 0; d < 8; d++){
+				int i = x + DIRECTIONS[d][0];
+				int j = y + DIRECTIONS[d][1];
+				long squares = 0;
+				while (i >= 0 && i <= 7 && j >= 0 && j <= 7){
+					BETWEEN[sq][(i << 3) | j] = squares;
+					DIRECTION[sq][(i << 3) | j] = (byte) d;
+					squares |= bit(i, j);
+					i += DIRECTIONS[d][0];
+					j += DIRECTIONS[d][1];
+				}
+				RAYS[d][sq] = squares;
+			}
+		}
+	}
+
+	private long black;
+	private long white;
+	private long hash;
+	private long[] links = new long[64];
+	private final int[] pathSquare = new int[MAX_CHIPS];
+	private final int[] pathEntry = new int[MAX_CHIPS];
+	private final long[] pathUntried = new long[MAX_CHIPS];
+	private int[] interiorLinks = new int[2];
+	private int[] goalAreaLinks = new int[2];
+	private final int[] featureBuffer = new int[FEATURES];
+	private long oddEdges;
+	private int networkKnown;
+	private int networkFound;
+	protected long networkChecks; // calls of networkId, counted for SearchStats
+
+	/**
+	 * Helper method: returns the bitboard mask of square (x, y)
+	 */
+	private static long bit(int x, int y){
+		return 1L << ((x << 3) | y);
+	}
 
 	/**
 	 * Helper method: prints out this board
@@ -14,657 +115,987 @@ public class Board {
 	protected void printBoard(){
 		String[] str = new String[8];
 		for (int j = 0 ; j < 8 ; j++){
-			str[j]= new String(); 
-	  		for (int i = 0 ; i < 8 ; i++){
-	  			if (current[i][j].isDead()){
-	  				str[j] += "X ";
-	  			}
-	  			else if(current[i][j].isBlack()){
-	  			  str[j] += "B "; 
-	  			}
-	  		    else if (current[i][j].isWhite()){
-	  		    	str[j] += "W "; 
-	  		    } 
-	  		    else {
-	  		    	str[j] += "- "; 
-	  		    }
-	  		}
-	  	}
-	  	for (int i = 0 ; i < 8 ; i++){
-	  		System.out.println(str[i]); 
-	  	} 
-
-	}
-	
-	/**
-	 * a board constructor. Makes an empty 8x8 board; ensures that no chips can be 
-	 * placed on the board's corners
+			str[j]= new String();
+			for (int i = 0 ; i < 8 ; i++){
+				long b = bit(i, j);
+				if ((DEAD & b) != 0){
+					str[j] += "X ";
+				}
+				else if ((black & b) != 0){
+					str[j] += "B ";
+				}
+				else if ((white & b) != 0){
+					str[j] += "W ";
+				}
+				else {
+					str[j] += "- ";
+				}
+			}
+		}
+		for (int i = 0 ; i < 8 ; i++){
+			System.out.println(str[i]);
+		}
+	}
+
+	/**
+	 * a board constructor. Makes an empty 8x8 board; the corners are kept dead
+	 * by the DEAD mask
 	 */
 	protected Board(){
-		current = new Cell[8][8]; 
-		for (int i = 0; i < 8; i++){
-			for (int j = 0; j < 8; j++){
-				current[i][j] = new Cell(i,j);
+		black = 0;
+		white = 0;
+		hash = 0;
+	}
+
+	/**
+	 * a copy constructor.  Makes a board with the same chips as the given one.
+	 * To copy a board and then make a move on it, as the old unfinished
+	 * Board(board, move, color) in main meant to, copy and then call action.
+	 * @param other: the board to copy
+	 */
+	protected Board(Board other){
+		copyFrom(other);
+	}
+
+	/**
+	 * a board constructor.  Makes a board from a snapshot taken with chips.
+	 * @param black: the black chips
+	 * @param white: the white chips
+	 */
+	protected Board(long black, long white){
+		restore(black, white);
+	}
+
+	/**
+	 * makes this board a copy of the given one without allocating anything, so
+	 * a searcher can keep one private board and reload it for every search.
+	 * @param other: the board to copy; it is not changed
+	 */
+	protected void copyFrom(Board other){
+		black = other.black;
+		white = other.white;
+		hash = other.hash;
+		System.arraycopy(other.links, 0, links, 0, 64);
+		interiorLinks[0] = other.interiorLinks[0];
+		interiorLinks[1] = other.interiorLinks[1];
+		goalAreaLinks[0] = other.goalAreaLinks[0];
+		goalAreaLinks[1] = other.goalAreaLinks[1];
+		oddEdges = other.oddEdges;
+		networkKnown = other.networkKnown;
+		networkFound = other.networkFound;
+	}
+
+	/**
+	 * sets this board to the position of a snapshot.  The two chip masks are
+	 * the whole position, so chips(Cell.BLACK) and chips(Cell.WHITE) are a
+	 * snapshot; the connections, the hash and the totals are rebuilt from them.
+	 * @param black: the black chips
+	 * @param white: the white chips
+	 */
+	protected void restore(long black, long white){
+		for (long b = this.black | this.white; b != 0; b &= b - 1){
+			links[Long.numberOfTrailingZeros(b)] = 0;
+		}
+		this.black = black;
+		this.white = white;
+		hash = 0;
+		oddEdges = 0;
+		interiorLinks[0] = interiorLinks[1] = 0;
+		goalAreaLinks[0] = goalAreaLinks[1] = 0;
+		long occupied = black | white;
+		for (long b = occupied; b != 0; b &= b - 1){
+			int square = Long.numberOfTrailingZeros(b);
+			int color = ((black & (1L << square)) != 0) ? Cell.BLACK : Cell.WHITE;
+			hash ^= ZOBRIST[color][square];
+			// Each connection is found once, from its lower chip.
+			for (int axis = 0; axis < 4; axis++){
+				int c = first(RAYS[axis][square] & occupied, axis);
+				if (c >= 0 && (chips(color) & (1L << c)) != 0 && linkAllowed(axis, square, color)){
+					links[square] |= 1L << c;
+					links[c] |= 1L << square;
+				}
 			}
 		}
-		current[0][0].setDead();
-		current[0][7].setDead();
-		current[7][0].setDead();
-		current[7][7].setDead();
-		numOfWhite = 0;
-		numOfBlack = 0;
-	} 
-  
+		for (long b = occupied; b != 0; b &= b - 1){
+			score(Long.numberOfTrailingZeros(b), 1);
+		}
+		networkKnown = 0;
+	}
+
+	/**
+	 * returns the Zobrist hash of this board with the given color to move.  The
+	 * hash of the chips is kept up to date by action and undo.
+	 * @param colorToMove: the color whose turn it is
+	 * @return: a 64-bit hash of the chips and the side to move
+	 */
+	protected long hash(int colorToMove){
+		return (colorToMove == Cell.WHITE) ? hash ^ WHITE_TO_MOVE : hash;
+	}
+
+	/**
+	 * returns the Zobrist hash of this board reflected by the given symmetry.
+	 * Reflecting x (x to 7 - x), y, or both leaves both colors' goals where they
+	 * were, so the reflected board plays exactly like this one.
+	 * @param colorToMove: the color whose turn it is
+	 * @param symmetry: one of SYMMETRIES; the mask XORed into every square
+	 * @return: the hash of the reflected board, computed from scratch
+	 */
+	protected long hash(int colorToMove, int symmetry){
+		long h = (colorToMove == Cell.WHITE) ? WHITE_TO_MOVE : 0;
+		for (long b = black; b != 0; b &= b - 1){
+			h ^= ZOBRIST[Cell.BLACK][Long.numberOfTrailingZeros(b) ^ symmetry];
+		}
+		for (long w = white; w != 0; w &= w - 1){
+			h ^= ZOBRIST[Cell.WHITE][Long.numberOfTrailingZeros(w) ^ symmetry];
+		}
+		return h;
+	}
+
+	/**
+	 * returns the chips of the given color; with the other color's chips it is a
+	 * snapshot of the board for restore
+	 * @param color: either Cell.BLACK or Cell.WHITE
+	 * @return: the bitboard of that color's chips; 0 for any other color
+	 */
+	protected long chips(int color){
+		if (color == Cell.BLACK){
+			return black;
+		} else if (color == Cell.WHITE){
+			return white;
+		}
+		return 0;
+	}
+
+	/**
+	 * Helper method: returns the kind of square (x, y) using the Cell constants
+	 * @return: Cell.BLACK, Cell.WHITE, Cell.DEAD or Cell.EMPTY
+	 */
+	protected int cellKind(int x, int y){
+		long b = bit(x, y);
+		if ((black & b) != 0){
+			return Cell.BLACK;
+		} else if ((white & b) != 0){
+			return Cell.WHITE;
+		} else if ((DEAD & b) != 0){
+			return Cell.DEAD;
+		}
+		return Cell.EMPTY;
+	}
+
 	/**
 	 * places a chip on this board; the chip's color and coordinates are determined by the given move
 	 * @param move: a given move that instructs where to place or move chip
 	 * @param color: a given color for the chip being moved or placed
 	 */
 	protected void action(Move move, int color) {
+		if (color != Cell.BLACK && color != Cell.WHITE){
+			return;
+		}
 		if (move.moveKind == Move.ADD){
-			current[move.x1][move.y1].setColor(color);
-			if (color == Cell.BLACK){
-				numOfBlack++ ; 
-			} else if (color == Cell.WHITE){
-				numOfWhite++; 
-			}
+			place((move.x1 << 3) | move.y1, color);
 		} else if (move.moveKind == Move.STEP){
-			current[move.x2][move.y2].setEmpty();
-			current[move.x1][move.y1].setColor(color);  				
-		} else if (move.moveKind == Move.QUIT){
-			return;
+			remove((move.x2 << 3) | move.y2, color);
+			place((move.x1 << 3) | move.y1, color);
 		}
-	} 
-	
+	}
+
 	/**
 	 * undoes a previous action which changed this board
 	 * @param move: the previous move taken
-	 * @param color: the color for the previous move's chip 
+	 * @param color: the color for the previous move's chip
 	 */
 	protected void undo(Move move, int color){
+		if (color != Cell.BLACK && color != Cell.WHITE){
+			return;
+		}
 		if (move.moveKind == Move.ADD){
-			current[move.x1][move.y1].setEmpty();
-			if (color == Cell.BLACK){
-				numOfBlack--;
-			} else if (color == Cell.WHITE){
-				numOfWhite--;
+			remove((move.x1 << 3) | move.y1, color);
+		} else if (move.moveKind == Move.STEP){
+			remove((move.x1 << 3) | move.y1, color);
+			place((move.x2 << 3) | move.y2, color);
+		}
+	}
+
+	/**
+	 * applies a packed move (see PackedMove); the same as action(Move, int)
+	 * without allocating a Move
+	 * @param move: the packed move
+	 * @param color: the color of the chip being moved or placed
+	 */
+	protected void action(int move, int color){
+		if (PackedMove.kind(move) == Move.ADD){
+			place(PackedMove.to(move), color);
+		} else if (PackedMove.kind(move) == Move.STEP){
+			remove(PackedMove.from(move), color);
+			place(PackedMove.to(move), color);
+		}
+	}
+
+	/**
+	 * undoes a packed move applied with action(int, int)
+	 * @param move: the packed move
+	 * @param color: the color of the chip that was moved or placed
+	 */
+	protected void undo(int move, int color){
+		if (PackedMove.kind(move) == Move.ADD){
+			remove(PackedMove.to(move), color);
+		} else if (PackedMove.kind(move) == Move.STEP){
+			remove(PackedMove.to(move), color);
+			place(PackedMove.from(move), color);
+		}
+	}
+
+	/**
+	 * Helper method: puts a chip on an empty square and updates the hash and the
+	 * connections.  The new chip cuts the connection between the chips on either
+	 * side of it along each line, and connects with those of its own color.
+	 * Only those chips and the new one change their score terms.
+	 * @param square: the empty square
+	 * @param color: the chip's color
+	 */
+	private void place(int square, int color){
+		long touched = 1L << square;
+		for (int axis = 0; axis < 4; axis++){
+			int a = nearest(square, axis);
+			int c = nearest(square, axis + 4);
+			if (a >= 0){
+				score(a, -1);
+				touched |= 1L << a;
+			}
+			if (c >= 0){
+				score(c, -1);
+				touched |= 1L << c;
+			}
+			if (a >= 0 && c >= 0 && (links[a] & (1L << c)) != 0){
+				links[a] &= ~(1L << c);
+				links[c] &= ~(1L << a);
+			}
+			if (linkAllowed(axis, square, color)){
+				if (a >= 0 && (chips(color) & (1L << a)) != 0){
+					links[square] |= 1L << a;
+					links[a] |= 1L << square;
+				}
+				if (c >= 0 && (chips(color) & (1L << c)) != 0){
+					links[square] |= 1L << c;
+					links[c] |= 1L << square;
+				}
 			}
 		}
-		else if (move.moveKind == Move.STEP){
-			current[move.x2][move.y2].setColor(color);
-			current[move.x1][move.y1].setEmpty();
-		} else if (move.moveKind == Move.QUIT){
-			return;
+		if (color == Cell.BLACK){
+			black |= 1L << square;
+		} else {
+			white |= 1L << square;
+		}
+		for (; touched != 0; touched &= touched - 1){
+			score(Long.numberOfTrailingZeros(touched), 1);
+		}
+		hash ^= ZOBRIST[color][square];
+		networkKnown = 0;
+	}
+
+	/**
+	 * Helper method: takes a chip off the board and updates the hash and the
+	 * connections.  Chips on either side of it along a line connect with each
+	 * other if they have the same color.
+	 * @param square: the chip's square
+	 * @param color: the chip's color
+	 */
+	private void remove(int square, int color){
+		long touched = links[square];
+		score(square, -1);
+		for (long n = touched; n != 0; n &= n - 1){
+			score(Long.numberOfTrailingZeros(n), -1);
+		}
+		if (color == Cell.BLACK){
+			black &= ~(1L << square);
+		} else {
+			white &= ~(1L << square);
+		}
+		hash ^= ZOBRIST[color][square];
+		for (long n = links[square]; n != 0; n &= n - 1){
+			links[Long.numberOfTrailingZeros(n)] &= ~(1L << square);
+		}
+		links[square] = 0;
+		for (int axis = 0; axis < 4; axis++){
+			int a = nearest(square, axis);
+			int c = nearest(square, axis + 4);
+			if (a >= 0 && c >= 0){
+				int kind = ((black & (1L << a)) != 0) ? Cell.BLACK : Cell.WHITE;
+				if ((chips(kind) & (1L << c)) != 0 && linkAllowed(axis, a, kind)){
+					for (long n = ((1L << a) | (1L << c)) & ~touched; n != 0; n &= n - 1){
+						score(Long.numberOfTrailingZeros(n), -1);
+					}
+					touched |= (1L << a) | (1L << c);
+					links[a] |= 1L << c;
+					links[c] |= 1L << a;
+				}
+			}
+		}
+		for (; touched != 0; touched &= touched - 1){
+			score(Long.numberOfTrailingZeros(touched), 1);
 		}
+		networkKnown = 0;
 	}
 
 	/**
-	 *  Determines whether a given move on this board is valid; returns true if it is, false otherwise 
+	 * Helper method: adds the connections of a chip to the running totals, or
+	 * takes them off.  The connections of chips in a goal area are counted
+	 * apart from the others, since they score 1.5 each instead of 1, and
+	 * oddEdges marks the goal-area chips whose score is not an integer.
+	 * @param square: the chip's square
+	 * @param sign: 1 to add the connections, -1 to take them off
+	 */
+	private void score(int square, int sign){
+		long b = 1L << square;
+		int color = ((black & b) != 0) ? Cell.BLACK : Cell.WHITE;
+		int degree = Long.bitCount(links[square]);
+		if (((BLACK_GOALS | WHITE_GOALS) & b) != 0){
+			goalAreaLinks[color] += sign * degree;
+			if ((degree & 1) != 0){
+				oddEdges ^= b;
+			}
+		} else {
+			interiorLinks[color] += sign * degree;
+		}
+	}
+
+	/**
+	 * Helper method: returns the square of the first chip seen from the given
+	 * square in the given direction
+	 * @param direction: an index into DIRECTIONS
+	 * @return: the square of the chip, or -1 if the edge is reached first
+	 */
+	private int nearest(int square, int direction){
+		return first(RAYS[direction][square] & (black | white), direction);
+	}
+
+	/**
+	 * Helper method: returns the square of the given mask nearest to the start
+	 * of a ray in the given direction
+	 * @param squares: squares on one ray
+	 * @param direction: the ray's index into DIRECTIONS
+	 * @return: the nearest square, or -1 if the mask is empty
+	 */
+	private static int first(long squares, int direction){
+		if (squares == 0){
+			return -1;
+		}
+		return (direction < 4) ? Long.numberOfTrailingZeros(squares) : 63 - Long.numberOfLeadingZeros(squares);
+	}
+
+	/**
+	 * Helper method: a black chip in a black goal has no horizontal connections,
+	 * and a white chip in a white goal has no vertical ones
+	 * @param axis: an index into DIRECTIONS below 4; 0 is horizontal and 1 is vertical
+	 * @param square: the chip's square
+	 * @param color: the chip's color
+	 * @return: true if the chip may connect along the axis
+	 */
+	private static boolean linkAllowed(int axis, int square, int color){
+		if (axis == 0 && color == Cell.BLACK){
+			return (BLACK_GOALS & (1L << square)) == 0;
+		} else if (axis == 1 && color == Cell.WHITE){
+			return (WHITE_GOALS & (1L << square)) == 0;
+		}
+		return true;
+	}
+
+	/**
+	 *  Determines whether a given move on this board is valid; returns true if it is, false otherwise.
+	 *  Does not modify this board, nor write any of its fields, so any number of
+	 *  threads may check moves on one board while none of them changes it.
 	 *  @param move: the given move to check
 	 *  @param color: the chip's color
 	 */
 	protected boolean isValidMove(Move move, int color){
-		if (color == Cell.BLACK && numOfBlack < 10 && move.moveKind == Move.STEP){
+		long own = chips(color);
+		int count = Long.bitCount(own);
+		if (color != Cell.BLACK && color != Cell.WHITE){
 			return false;
 		}
-		if (color == Cell.WHITE && numOfWhite < 10 && move.moveKind == Move.STEP){
+		if (move.moveKind == Move.STEP && count < 10){
 			return false;
 		}
-		if (color == Cell.BLACK && numOfBlack == 10 && move.moveKind == Move.ADD){
+		if (move.moveKind == Move.ADD && count == 10){
 			return false;
 		}
-		if (color == Cell.WHITE && numOfWhite == 10 && move.moveKind == Move.ADD){
+		if (move.moveKind != Move.ADD && move.moveKind != Move.STEP){
 			return false;
 		}
 		if ((move.x1 < 0) || (move.x1 > 7) || (move.y1 < 0) || (move.y1 > 7)){
 			return false;
 		}
-		if (current[move.x1][move.y1].isDead()) {
+		long to = bit(move.x1, move.y1);
+		if ((DEAD & to) != 0){
 			return false;
 		}
-		if (color == Cell.BLACK) {
-			if ((move.x1 == 0)  || (move.x1 == 7)) {
-				return false;
-			}
+		if (color == Cell.BLACK && (WHITE_GOALS & to) != 0){
+			return false;
 		}
-		if (color == Cell.WHITE){
-			if ((move.y1 == 0) || (move.y1 == 7)) { 
-				return false;
-			}
+		if (color == Cell.WHITE && (BLACK_GOALS & to) != 0){
+			return false;
 		}
-		if (current[move.x1][move.y1].isActive()){
+		if (((black | white) & to) != 0){
 			return false;
 		}
 		if (move.moveKind == Move.STEP){
-			if (move.x1 == move.x2 && move.y1 == move.y2){
+			if ((move.x2 < 0) || (move.x2 > 7) || (move.y2 < 0) || (move.y2 > 7)){
 				return false;
 			}
-			if (current[move.x2][move.y2].isEmpty()){
+			long from = bit(move.x2, move.y2);
+			if ((own & from) == 0){
 				return false;
 			}
-			if (current[move.x1][move.y1].isDead() || current[move.x2][move.y2].isDead()){
-				return false;
-			}
-			current[move.x2][move.y2].setMoved();
+			own &= ~from;
 		}
-
-		boolean cluster = hasCluster(move, color);
-    
-		if (move.moveKind == Move.STEP){
-			current[move.x2][move.y2].setColor(color);
-		}
-		return (!cluster);
+		return !hasCluster((move.x1 << 3) | move.y1, own);
 	}
 
-    /**
-     * Helper method: checks if three or more chips of the same color are in a cluster
-     * @param move: the given move to take
-     * @param color: the moving/adding chip's color
-     * @return: true if there is a cluster; false otherwise 
-     */
-	private boolean hasCluster(Move move, int color){
-		int count = 0;
-		int neighborX = 0;
-		int neighborY = 0;
- 
-		for (int i = move.x1-1; i <= move.x1+1; i++){
-			for (int j = move.y1-1; j <= move.y1+1; j++){
-				if (i == -1){
-					i++;
-				}
-				if (i == 8){
-					break;
-				}
-				if (j == -1){
-					j++;
-				}
-				if (j == 8){
-					break;
-				}
-				if (current[i][j].isColor(color)){
-					count++;
-					neighborX = i;
-					neighborY = j;
-				}
-			}
-		}
-    	if (count == 0){
+	/**
+	 * Helper method: checks if a chip on the given square would be part of a
+	 * cluster of three or more chips
+	 * @param square: the square the chip is placed on
+	 * @param own: the other chips of the same color
+	 * @return: true if there would be a cluster; false otherwise
+	 */
+	private static boolean hasCluster(int square, long own){
+		long neighbors = NEIGHBORS[square] & own;
+		if (neighbors == 0){
 			return false;
 		}
-    	if (count >= 2){
-    		return true;
-    	}
-    	else if (count >= 1){
-    		for (int i = neighborX-1; i <= neighborX+1; i++){
-    			for (int j = neighborY-1; j <= neighborY+1; j++){
-    				if (i == -1){
-    					i++;
-    				}
-    				if (i == 8){
-    					break;
-    				}
-    				if (j == -1){
-    					j++;
-    				}
-    				if (j == 8){
-    					break;
-    			}
-    				if (current[i][j].isColor(color)){
-    					count++;
-    				}
-    			}
-    		}
-    	}
-    	return (count-1 >= 2);
-	}
-  
+		if (Long.bitCount(neighbors) >= 2){
+			return true;
+		}
+		return (NEIGHBORS[Long.numberOfTrailingZeros(neighbors)] & own) != 0;
+	}
+
 	/**
 	 * lists all the possible valid moves for chips of given color on this board
 	 * @param color: the color of the chips to check
-	 * @return: a list that contains all possible valid moves for chips of given color on this board 
+	 * @return: a list that contains all possible valid moves for chips of given color on this board
 	 */
 	protected DList listValidMove(int color){
 		DList list = new DList();
-		int[] chipX = new int[64];
-		int[] chipY = new int[64];
-		int arrayIndex = 0;
-		
-		for (int i = 0; i < 8; i++){
-			for (int j = 0; j < 8; j++){
-				if (current[i][j].isColor(color)){
-					chipX[arrayIndex] = i;
-					chipY[arrayIndex] = j;
-					arrayIndex++;
-				}
-				Move addMove = new Move(i, j);
-				if (isValidMove(addMove, color)){
-					list.insertBack(addMove);
-				}
-			}
-		}
-		for (int k = arrayIndex; k > 0; k--){
-			for (int i = 0; i < 8; i++){
-				for (int j = 0; j < 8; j++){
-					Move stepMove = new Move(i, j, chipX[k], chipY[k]);
-					if (isValidMove(stepMove, color)){
-						list.insertBack(stepMove);
-					}
+		long own = chips(color);
+		if (color != Cell.BLACK && color != Cell.WHITE){
+			return list;
+		}
+		long open = ~(black | white | DEAD) & ~(color == Cell.BLACK ? WHITE_GOALS : BLACK_GOALS);
+
+		if (Long.bitCount(own) < 10){
+			for (long targets = open; targets != 0; targets &= targets - 1){
+				int to = Long.numberOfTrailingZeros(targets);
+				if (!hasCluster(to, own)){
+					list.insertBack(new Move(to >>> 3, to & 7));
+				}
+			}
+			return list;
+		}
+		for (long sources = own; sources != 0; sources &= ~Long.highestOneBit(sources)){
+			int from = 63 - Long.numberOfLeadingZeros(sources);
+			long rest = own & ~(1L << from);
+			for (long targets = open; targets != 0; targets &= targets - 1){
+				int to = Long.numberOfTrailingZeros(targets);
+				if (!hasCluster(to, rest)){
+					list.insertBack(new Move(to >>> 3, to & 7, from >>> 3, from & 7));
 				}
 			}
 		}
 		return list;
 	}
-	
-	/**
-	 * Helper method: returns the number of connected chips
-	 * @param given: a Cell on this board
-	 * @return: an integer that indicates the number of connected chips on this board
-	 */
-	private int numConnectedChips(Cell given){
-		return findChips(given).length();
-	} 
 
 	/**
-	 * find possiable connected chips horizontally given by the given move
-	 * if given chip is in Black goal, then will return length 0 dlist
-	 * @param given: a given chip 
-	 * @return dlist which contains pissible connect chips
+	 * writes all the valid moves for chips of the given color into a buffer, as
+	 * packed moves (see PackedMove), in the same order as listValidMove.  Does
+	 * not allocate.
+	 * @param color: the color of the chips to move
+	 * @param buffer: receives the moves; 512 entries are always enough
+	 * @return: the number of moves written
 	 */
-  
-	private DList horizontallyConnect (Cell given){
-		DList list = new DList();
-		int color = given.getCellKind();
-		int opposite = given.opposite();
-		int y = given.getY();
-		int x = given.getX();
-		
-		if (!given.isActive()){
-			return list;
-		}
-		if (given.isBlack() && (y == 0 || y == 7)){
-			return list; 
+	protected int generateMoves(int color, int[] buffer){
+		int count = 0;
+		long own = chips(color);
+		if (color != Cell.BLACK && color != Cell.WHITE){
+			return 0;
 		}
-		for (int i = x - 1; i >= 0; i--){
-			if (current[i][y].isColor(opposite)){
-				break; 
-			} else if (current[i][y].isColor(color)){
-				list.insertBack(current[i][y]);
-				break;
+		long open = ~(black | white | DEAD) & ~(color == Cell.BLACK ? WHITE_GOALS : BLACK_GOALS);
+
+		if (Long.bitCount(own) < 10){
+			for (long targets = open; targets != 0; targets &= targets - 1){
+				int to = Long.numberOfTrailingZeros(targets);
+				if (!hasCluster(to, own)){
+					buffer[count++] = PackedMove.add(to);
+				}
 			}
+			return count;
 		}
-		for (int i = x+1; i<=7; i++){
-			if (current[i][y].isColor(opposite)){
-				break; 
-			} else if (current[i][y].isColor(color)){
-				list.insertBack(current[i][y]);
-				break; 
+		for (long sources = own; sources != 0; sources &= ~Long.highestOneBit(sources)){
+			int from = 63 - Long.numberOfLeadingZeros(sources);
+			long rest = own & ~(1L << from);
+			for (long targets = open; targets != 0; targets &= targets - 1){
+				int to = Long.numberOfTrailingZeros(targets);
+				if (!hasCluster(to, rest)){
+					buffer[count++] = PackedMove.step(to, from);
+				}
 			}
 		}
-		return list; 
+		return count;
 	}
-    
-    /**
-	 * find possiable connected chips vertically given by the given move
-	 * if given chip is in white goal, then will return length 0 dlist
-	 * @param given: a given chip 
-	 * @return dlist which contains pissible connect chips
+
+	/**
+	 * writes the valid moves of the given color that complete a network for it
+	 * and not for the other color.  A chip that completes a network joins the
+	 * chips connected to one goal with those connected to the other, so only
+	 * targets that are in or can see each of those groups are tried; for a
+	 * step, every target is tried when lifting the source alone completes a
+	 * network.
+	 * @param color: the color of the chips to move
+	 * @param buffer: receives the packed moves; null stops at the first one
+	 * @return: the number of moves found
 	 */
-	private DList verticallyConnnect (Cell given){
-		DList list = new DList();
-		int color = given.getCellKind();
-		int opposite = given.opposite();
-		int y = given.getY();
-		int x = given.getX();
-		
-		if (!given.isActive()){
-			return list;
-		}
-		if (given.isWhite() && (x==0 || x == 7)){
-			return list;
-		}
-		for (int i = y - 1; i >= 0; i--){
-			if (current[x][i].isColor(opposite)){
-				break; 
-			} else if (current[x][i].isColor(color)){
-				list.insertBack(current[x][i]);
-				break; 
+	protected int generateThreats(int color, int[] buffer){
+		long own = chips(color);
+		int chips = Long.bitCount(own);
+		long open = ~(black | white | DEAD) & ~(color == Cell.BLACK ? WHITE_GOALS : BLACK_GOALS);
+		int count = 0;
+		if (chips < 10){
+			if (chips < 5){
+				return 0;
+			}
+			for (long targets = open & completions(color); targets != 0; targets &= targets - 1){
+				int to = Long.numberOfTrailingZeros(targets);
+				if (hasCluster(to, own)){
+					continue;
+				}
+				place(to, color);
+				boolean wins = networkId(color);
+				remove(to, color);
+				if (wins){
+					if (buffer == null){
+						return 1;
+					}
+					buffer[count++] = PackedMove.add(to);
+				}
 			}
+			return count;
 		}
-		for (int i = y+1; i<=7; i++){
-			if (current[x][i].isColor(opposite)){
-				break; 
-			} else if (current[x][i].isColor(color)){
-				list.insertBack(current[x][i]);
-				break; 
+		// Lifting a chip can only shrink the groups connected to the goals,
+		// unless it stands in line between two chips it connects with: then
+		// those two connect directly and may form a network without it.
+		long occupied = black | white;
+		long near = connected(own & START_GOAL[color]);
+		long far = connected(own & END_GOAL[color]);
+		for (long sources = own; sources != 0; sources &= sources - 1){
+			int from = Long.numberOfTrailingZeros(sources);
+			long rest = own & ~(1L << from);
+			long targets = open;
+			boolean bridge = bridges(from);
+			if (!bridge){
+				long seen = occupied & ~(1L << from);
+				targets &= (START_GOAL[color] | sightlines(near & rest, seen)) & (END_GOAL[color] | sightlines(far & rest, seen));
+				if (targets == 0){
+					continue;
+				}
 			}
+			remove(from, color);
+			if (bridge && !networkId(color)){
+				targets &= completions(color);
+			}
+			for (; targets != 0; targets &= targets - 1){
+				int to = Long.numberOfTrailingZeros(targets);
+				if (hasCluster(to, rest)){
+					continue;
+				}
+				place(to, color);
+				boolean wins = networkId(color) && !networkId(1 - color);
+				remove(to, color);
+				if (wins){
+					if (buffer == null){
+						place(from, color);
+						return 1;
+					}
+					buffer[count++] = PackedMove.step(to, from);
+				}
+			}
+			place(from, color);
 		}
-		return list;
+		return count;
 	}
-    /**
-	 * find possiable connected chips leftRightdiagonal given by the given move
-	 * @param given: a given chip 
-	 * @return dlist which contains pissible connect chips
+
+	/**
+	 * writes the valid moves of the given color after which the other color has
+	 * no move that completes a network.  Moves to the targets of the other
+	 * color's threats, or between two of its chips that are or would be
+	 * connected, are tried first, and nearly always include a block.  A block
+	 * elsewhere is possible, so if they include none, every other valid move is
+	 * tried as well; a result of 0 therefore means that no move blocks.
+	 * @param color: the color of the chips to move
+	 * @param threats: the other color's moves from generateThreats
+	 * @param threatCount: the number of threats
+	 * @param buffer: receives the packed moves; 512 entries are always enough
+	 * @return: the number of moves found
 	 */
-	private DList leftRightDiagonalConnect(Cell given){
-		DList list = new DList();
-		int color = given.getCellKind();
-		int opposite = given.opposite();
-		int y = given.getY()-1;
-		int x = given.getX()-1;
-    
-		if (!given.isActive()){
-			return list;
-		}	
-		while (x >= 0 && y >= 0){
-			if (current[x][y].isColor(opposite)){
-				break; 
-			} else if (current[x][y].isColor(color)){
-				list.insertBack(current[x][y]);
-				break; 
-			}
-			x--; 
-			y--; 
-		}
-		x = given.getX() + 1; 
-		y = given.getY() + 1;
-		while (x <= 7 && y <= 7){
-			if (current[x][y].isColor(opposite)){
-				break; 
-			} else if (current[x][y].isColor(color)){
-				list.insertBack(current[x][y]);
-				break; 
-			}
-			x++; 
-			y++; 
+	protected int generateBlocks(int color, int[] threats, int threatCount, int[] buffer){
+		int other = 1 - color;
+		long candidates = 0;
+		for (int i = 0; i < threatCount; i++){
+			int to = PackedMove.to(threats[i]);
+			candidates |= 1L << to;
+			for (int axis = 0; axis < 4; axis++){
+				int a = nearest(to, axis);
+				int c = nearest(to, axis + 4);
+				if (a >= 0 && (chips(other) & (1L << a)) != 0){
+					candidates |= BETWEEN[to][a];
+				}
+				if (c >= 0 && (chips(other) & (1L << c)) != 0){
+					candidates |= BETWEEN[to][c];
+				}
+			}
 		}
-		return list;
+		for (long chips = chips(other); chips != 0; chips &= chips - 1){
+			int a = Long.numberOfTrailingZeros(chips);
+			for (long linked = links[a] & ~((1L << a) - 1); linked != 0; linked &= linked - 1){
+				candidates |= BETWEEN[a][Long.numberOfTrailingZeros(linked)];
+			}
+		}
+		int count = blocksTo(color, candidates, threats, threatCount, buffer);
+		if (count > 0){
+			return count;
+		}
+		int moves = generateMoves(color, buffer);
+		for (int i = 0; i < moves; i++){
+			int move = buffer[i];
+			if ((candidates & (1L << PackedMove.to(move))) == 0 && blocks(move, color, threats, threatCount)){
+				buffer[count++] = move;
+			}
+		}
+		return count;
 	}
-    /**
-	 * find possiable connected chips leftRightdiagonal given by the given move
-	 * @param given: a given chip 
-	 * @return dlist which contains pissible connect chips
+
+	/**
+	 * Helper method: writes the moves of the given color to the given targets
+	 * that leave the other color without a move that completes a network
 	 */
-	private DList rightLeftDiagonalConnect(Cell given){
-		DList list = new DList();
-		int color = given.getCellKind();
-		int opposite = given.opposite();
-		int y = given.getY()-1;
-		int x = given.getX()+1;
-		
-		if (!given.isActive()){
-			return list;
+	private int blocksTo(int color, long targets, int[] threats, int threatCount, int[] buffer){
+		long own = chips(color);
+		long open = ~(black | white | DEAD) & ~(color == Cell.BLACK ? WHITE_GOALS : BLACK_GOALS);
+		int count = 0;
+		if (Long.bitCount(own) < 10){
+			for (long t = targets & open; t != 0; t &= t - 1){
+				int to = Long.numberOfTrailingZeros(t);
+				if (!hasCluster(to, own) && blocks(PackedMove.add(to), color, threats, threatCount)){
+					buffer[count++] = PackedMove.add(to);
+				}
+			}
+			return count;
 		}
-		while (x <= 7 && y >= 0){
-			if (current[x][y].isColor(opposite)){
-				break; 
-			} else if (current[x][y].isColor(color)){
-				list.insertBack(current[x][y]);
-				break;
-    	}
-			x++; 
-			y--; 
-		} 
-		x = given.getX()-1; 
-		y = given.getY()+1;
-		while (x >= 0 && y <= 7){
-			if (current[x][y].isColor(opposite)){
-				break; 
-			} else if (current[x][y].isColor(color)){
-				list.insertBack(current[x][y]);
-				break; 
-			}
-			x--; 
-			y++; 
+		for (long sources = own; sources != 0; sources &= sources - 1){
+			int from = Long.numberOfTrailingZeros(sources);
+			long rest = own & ~(1L << from);
+			for (long t = targets & open; t != 0; t &= t - 1){
+				int to = Long.numberOfTrailingZeros(t);
+				if (!hasCluster(to, rest) && blocks(PackedMove.step(to, from), color, threats, threatCount)){
+					buffer[count++] = PackedMove.step(to, from);
+				}
+			}
 		}
-		return list;
+		return count;
 	}
+
 	/**
-	 * merge two given dlist together. 
-	 * @param dlist1: a given list1  
-	 * @param dlist1: a given list2
-	 * @return dlist which contains merge two lists. 
+	 * Helper method: checks whether the given move leaves the other color
+	 * without a network and without a move that completes one
 	 */
-	
-	private static DList merge(DList list1 , DList list2){	
-		try{
-			DListNode pointer = ((DListNode)list2.front()); 
-			for (int i = 0 ; i < list2.length(); i++){
-				list1.insertBack(pointer.item());
-				pointer = (DListNode) pointer.next();
+	private boolean blocks(int move, int color, int[] threats, int threatCount){
+		int other = 1 - color;
+		action(move, color);
+		boolean blocks = !networkId(other);
+		// Most moves leave one of the known threats working.
+		for (int i = 0; i < threatCount && blocks; i++){
+			if (((black | white) & (1L << PackedMove.to(threats[i]))) == 0){
+				action(threats[i], other);
+				blocks = !networkId(other) || networkId(color);
+				undo(threats[i], other);
 			}
-			return list1; 
-		} catch (InvalidNodeException e){
-			return list1; 
 		}
+		if (blocks){
+			blocks = generateThreats(other, null) == 0;
+		}
+		undo(move, color);
+		return blocks;
 	}
 
 	/**
-	 * returns true if this board has a winning network for the given color; 
-	 * false otherwise
-	 * @param color: the given color that is checked for a winning network
-	 * @return: true if this board has a winning network for the given color; 
-	 * false otherwise
+	 * Helper method: the empty squares from which a chip would see one of the
+	 * given chips along a line
+	 * @param own: the chips to look for
+	 * @param occupied: all chips on the board
 	 */
-	protected boolean networkId(int color){
-		if (color == Cell.BLACK){
-			return blackId(); 
-		} else if (color == Cell.WHITE){
-			return whiteId(); 
-		} else {
-			return false; 
+	private static long sightlines(long own, long occupied){
+		long seen = 0;
+		for (; own != 0; own &= own - 1){
+			int square = Long.numberOfTrailingZeros(own);
+			for (int d = 0; d < 8; d++){
+				long ray = RAYS[d][square];
+				int blocker = first(ray & occupied, d);
+				seen |= (blocker < 0) ? ray : BETWEEN[square][blocker];
+			}
 		}
+		return seen;
 	}
+
 	/**
-	 * returns true if this board has a winning network for blackId; 
-	 * false otherwise
-	 * @return: true if this board has a winning network for black; 
-	 * false otherwise
+	 * Helper method: the empty squares where a chip of the given color could
+	 * join its chips connected to the near goal with those connected to the far
+	 * goal, counting a chip in a goal as connected to it.  Ignores the rules on
+	 * goals and straight lines, so it may include squares that do not work.
 	 */
+	private long completions(int color){
+		long own = chips(color);
+		long occupied = black | white;
+		long near = START_GOAL[color] | sightlines(connected(own & START_GOAL[color]), occupied);
+		long far = END_GOAL[color] | sightlines(connected(own & END_GOAL[color]), occupied);
+		return near & far & ~occupied;
+	}
 
-	private boolean blackId(){
-		DList network = new DList(); 
-		if (numOfBlack < 6) {
-			return false; 
-		}  
-		for (int i =1 ; i < 7 ; i ++){
-			if (current[i][0].isBlack()){
-				network.insertBack(current[i][0]); 
-				if (getConnect(network)){
-					return true; 
-				} else {
-					network = new DList(); 
-				}
-			} 
+	/**
+	 * Helper method: checks whether the chip on the given square stands in a
+	 * straight line between two chips that it connects with
+	 */
+	private boolean bridges(int square){
+		int x = square >>> 3;
+		int y = square & 7;
+		int seen = 0;
+		for (long linked = links[square]; linked != 0; linked &= linked - 1){
+			int other = Long.numberOfTrailingZeros(linked);
+			// Each chip lies in one of eight directions; look for the opposite one.
+			int dx = Integer.signum((other >>> 3) - x);
+			int dy = Integer.signum((other & 7) - y);
+			if ((seen & (1 << (4 - 3 * dx - dy))) != 0){
+				return true;
+			}
+			seen |= 1 << (4 + 3 * dx + dy);
 		}
-		return false; 
+		return false;
 	}
-    /**
-	 * returns true if this board has a winning network for white; 
-	 * false otherwise
-	 * @return: true if this board has a winning network for white; 
-	 * false otherwise
+
+	/**
+	 * Helper method: the chips connected to the given chips through any number
+	 * of connections, including the given chips
 	 */
-	private boolean whiteId(){
-		DList network = new DList(); 
-		if (numOfWhite < 6){
-			return false; 
-		}  
-		for (int i =1; i < 7; i++){
-			if (current[0][i].isWhite()){
-				network.insertBack(current[0][i]); 
-				if (getConnect(network)){
-					return true; 
-				} else {
-					network = new DList(); 
-				}
-			} 
+	private long connected(long from){
+		long reached = from;
+		long frontier = from;
+		while (frontier != 0){
+			int sq = Long.numberOfTrailingZeros(frontier);
+			frontier &= frontier - 1;
+			long next = links[sq] & ~reached;
+			reached |= next;
+			frontier |= next;
 		}
-		return false; 
+		return reached;
 	}
 
 	/**
-	 * recursively to call with a longer dlist.
-	 * @param dlist which contains possible chips to form a network 
-	 * @return: true if this board has a winning network; 
-	 * false otherwise
+	 * Helper method: returns the kind of the first chip seen from the given
+	 * square in the given direction
+	 * @return: Cell.BLACK, Cell.WHITE, or Cell.EMPTY if the edge is reached first
 	 */
-
-	private boolean getConnect(DList sofar){
-		try{
-			Cell last = ((Cell)sofar.back().item()); 
-			if(checkNetwork(sofar)){
-				return true; 
-			} else if (sofar.length() > 1 && isGoal(last)){
-				return false; 
-			} else {
-				DList possibleConnect = findChips(last); 
-				if (possibleConnect.length() == 0) {
-					return false; 
-				} 
-				DListNode pointer = (DListNode)possibleConnect.front(); 
-				for (int i = 0; i < possibleConnect.length() ; i++){
-					Cell cur = (Cell)pointer.item(); 
-					if (!hasCell(sofar, cur)){
-						sofar.insertBack(cur);
-						if(getConnect(sofar)){
-							return true; 
-						} else {
-							((DListNode)sofar.back()).remove();
-						}
-					}	
-					pointer = (DListNode) pointer.next(); 
-				}
-				return false; 
-			} 
-		} catch (InvalidNodeException e){
-			return false; 
+	private int firstChip(int square, int direction){
+		int chip = nearest(square, direction);
+		if (chip < 0){
+			return Cell.EMPTY;
 		}
+		return ((black & (1L << chip)) != 0) ? Cell.BLACK : Cell.WHITE;
 	}
+
 	/**
-	 * @return returns true if  dlist already contains the given chip
-	 * false otherwise
-	 * @param dlist which contains possible chips to form a network
+	 * counts the chips of the given color that a chip on the given square would
+	 * connect with, plus the connections of the other color that it would cut.
+	 * Goal-area restrictions are ignored; this is only used to order moves.
+	 * @param square: the square a chip is placed on
+	 * @param color: the color of the chip
+	 * @return: the number of connections made and cut
 	 */
-	private static boolean hasCell (DList list, Cell next){
-		try {
-			DListNode pointer = (DListNode) list.front(); 
-			for (int i= 0; i < list.length(); i++){
-				if(next == pointer.item()){
-					return true; 
-				}
-				pointer = (DListNode) pointer.next(); 
+	protected int connectionsThrough(int square, int color){
+		int count = 0;
+		for (int d = 0; d < 4; d++){
+			int a = firstChip(square, d);
+			int b = firstChip(square, d + 4);
+			if (a == color){
+				count++;
+			}
+			if (b == color){
+				count++;
+			}
+			if (a == oppositeColor(color) && b == a){
+				count++;
 			}
-			return false; 
-		} catch (InvalidNodeException e){
-			return true; 
 		}
+		return count;
 	}
 
 	/**
-	 * check possiable dlist is valid network
-	 * @param dlist which contains possible chips to form a network 
-	 * @return: true if this board has a winning network; 
-	 * false otherwise
+	 * returns the chips (of the same color) that form connections with a chip,
+	 * found from scratch with the ray tables rather than read from links.
+	 * A black chip in a black goal has no horizontal connections, and a white chip in
+	 * a white goal has no vertical ones.
+	 * @param square: the given chip
+	 * @return: a mask of the squares of the chips that connect with the given chip;
+	 * 0 for an empty square
 	 */
-	private static boolean checkNetwork (DList sofar){
-		try{
-			Cell last = ((Cell)sofar.back().item()); 
-			if(sofar.length() < 6){
-				return false; 
-			} else if ( last.getY() != 7 && last.isBlack()) {
-				return false; 
-			} else if (last.getX() != 7 && last.isWhite()) {
-				return false; 
-			} else {
-				DListNode pointer = (DListNode) sofar.front(); 
-				while(true){
-					Cell first = (Cell) pointer.item(); 
-					Cell second = (Cell) pointer.next().item(); 
-					Cell third = (Cell) pointer.next().next().item(); 
-					if (isLine(first, second, third)){
-						return false; 
-					}
-					pointer = (DListNode)pointer.next(); 
+	private long findChips(int square){
+		long b = 1L << square;
+		int color;
+		if ((black & b) != 0){
+			color = Cell.BLACK;
+		} else if ((white & b) != 0){
+			color = Cell.WHITE;
+		} else {
+			return 0;
+		}
+		long found = 0;
+		for (int d = 0; d < 8; d++){
+			if (linkAllowed(d & 3, square, color)){
+				int chip = nearest(square, d);
+				if (chip >= 0 && (chips(color) & (1L << chip)) != 0){
+					found |= 1L << chip;
 				}
 			}
-		} catch (InvalidNodeException e){ }
-		return true; 
+		}
+		return found;
 	}
-    /**
-	 * check whether three chips form a line or not
-	 * @param three different chips(represented by cells)
-	 * @return: true if three chips is in one line; 
-	 * false otherwise
+
+	/**
+	 * returns true if the given color could be a few moves from a network: it
+	 * has at least five chips, and one of them is in one of its goals.  This is
+	 * a cheap filter for running the ProofSearch solver, not an exact test.
+	 * @param color: the color to check
+	 * @return: false if a network is still far off
 	 */
-	private static boolean isLine(Cell a, Cell b, Cell c){
-		int x1 = a.getX(); 
-		int y1 = a.getY(); 
-		int x2 = b.getX(); 
-		int y2 = b.getY(); 
-		int x3 = c.getX(); 
-		int y3 = c.getY();
-		if (x1*(y2 - y3) + x2*(y3 - y1) + x3*(y1 - y2) == 0){
-			return true; 
+	protected boolean nearNetwork(int color){
+		long own = chips(color);
+		if (Long.bitCount(own) < 5){
+			return false;
+		}
+		return (own & START_GOAL[color]) != 0 || (own & END_GOAL[color]) != 0;
+	}
 
+	/**
+	 * returns true if this board has a winning network for the given color;
+	 * false otherwise.  The answer is remembered until the next action or undo.
+	 * @param color: the given color that is checked for a winning network
+	 * @return: true if this board has a winning network for the given color;
+	 * false otherwise
+	 */
+	protected boolean networkId(int color){
+		if (SearchStats.ENABLED){
+			networkChecks++;
+		}
+		if (color != Cell.BLACK && color != Cell.WHITE){
+			return false;
+		}
+		if (Long.bitCount(chips(color)) < 6){
+			return false;
+		}
+		if ((networkKnown & (1 << color)) != 0){
+			return (networkFound & (1 << color)) != 0;
+		}
+		boolean found = goalReachable(color) && findNetwork(color);
+		networkKnown |= 1 << color;
+		if (found){
+			networkFound |= 1 << color;
 		} else {
-			return false; 
-		}  
+			networkFound &= ~(1 << color);
+		}
+		return found;
 	}
 
 	/**
-	 * returns a list of chips (of the same color) that form connections with a chip
-	 * @param chip: the given chip
-	 * @return: a list of chips of the same color that form connections with a given chip
+	 * Helper method: checks whether any chip in the far goal can be reached from
+	 * the near goal through connected chips, without passing through a goal.
+	 * Ignores the rule against three chips in a line, so it can only rule a
+	 * network out; a flood fill over the connection masks is much cheaper than
+	 * the path search that has to confirm it.
+	 * @param color: the color to check
+	 * @return: false if the color cannot have a network
 	 */
-	private DList findChips(Cell chip) {
-		DList list1 = horizontallyConnect(chip);
-		DList list2 = verticallyConnnect(chip);
-		DList list3 = leftRightDiagonalConnect(chip); 
-		DList list4 = rightLeftDiagonalConnect(chip); 
-		DList list = merge(list1 , merge(list2 , merge(list3,list4)));
-		return list; 
+	private boolean goalReachable(int color){
+		long start = chips(color) & START_GOAL[color];
+		long end = chips(color) & END_GOAL[color];
+		if (start == 0 || end == 0){
+			return false;
+		}
+		long reached = start;
+		long frontier = start;
+		while (frontier != 0){
+			int sq = Long.numberOfTrailingZeros(frontier);
+			frontier &= frontier - 1;
+			long next = links[sq] & ~reached & ~start;
+			reached |= next;
+			frontier |= next & ~end;
+		}
+		return (reached & end) != 0;
 	}
 
 	/**
-	 * check the given chip is in goal area or not
-	 * @param given: the given chip
-	 * @return: true if given chip is in goal area. 
+	 * Helper method: searches depth-first for a network from the chips in the
+	 * start goal, without allocating.  The path is kept on a fixed stack with,
+	 * for each chip, the direction it was entered from and the connections not
+	 * tried yet, and its chips in a mask.  A connection leaving a chip in the
+	 * direction it was entered would make three chips in a line, so it is
+	 * never followed; a chip in a goal ends the path.
+	 * @param color: the color of the chips in the network
+	 * @return: true if this board has a winning network for the given color
 	 */
-
- 
-	private static boolean isGoal(Cell given){
-		int color = given.getCellKind(); 
-		int x = given.getX(); 
-		int y = given.getY();  
-		if(color == Cell.BLACK){
-			if (y == 0 || y == 7){
-				return true; 
-			} else {
-				return false; 
-			} 
-		} else if (color == Cell.WHITE){
-			if (x == 0 || x == 0){
-				return true; 
-			} else {
-				return false; 
+	private boolean findNetwork(int color){
+		long goals = START_GOAL[color] | END_GOAL[color];
+		for (long start = chips(color) & START_GOAL[color]; start != 0; start &= start - 1){
+			int depth = 0;
+			pathSquare[0] = Long.numberOfTrailingZeros(start);
+			pathEntry[0] = -1;
+			pathUntried[0] = links[pathSquare[0]];
+			long onPath = 1L << pathSquare[0];
+			while (depth >= 0){
+				if (pathUntried[depth] == 0){
+					onPath &= ~(1L << pathSquare[depth]);
+					depth--;
+					continue;
+				}
+				int next = Long.numberOfTrailingZeros(pathUntried[depth]);
+				pathUntried[depth] &= pathUntried[depth] - 1;
+				int direction = DIRECTION[pathSquare[depth]][next];
+				if ((onPath & (1L << next)) != 0 || direction == pathEntry[depth]){
+					continue;
+				}
+				if ((goals & (1L << next)) != 0){
+					if ((END_GOAL[color] & (1L << next)) != 0 && depth + 2 >= 6){
+						return true;
+					}
+					continue;
+				}
+				depth++;
+				pathSquare[depth] = next;
+				pathEntry[depth] = direction;
+				pathUntried[depth] = links[next] & ~onPath;
+				onPath |= 1L << next;
 			}
-		} else {
-			return false; 
 		}
+		return false;
 	}
-	
+
 	/**
 	 * Assign a maximum positive score to a win by
 	 * your MachinePlayer, and a minimum negative score to a win by the opponent
-	 * @param color: the chip's color of the current turn's player 
-	 * @param stepsTaken: the total number of steps that have been taken by the players 
-	 * @return: an int--a board's score--an estimation of odds of winning for the board 
+	 * @param color: the chip's color of the current turn's player
+	 * @param stepsTaken: the total number of steps that have been taken by the players
+	 * @return: an int--a board's score--an estimation of odds of winning for the board
 	 */
 	protected int evaluation(int color, int stepsTaken){
 		int score = 0;
 		int max = Integer.MAX_VALUE;
 		int min = Integer.MIN_VALUE;
-		
+
 		if (networkId(color)) {
 			if (stepsTaken == 0){
 				return max;
@@ -681,32 +1112,116 @@ public class Board {
 				return (min / stepsTaken);
 			}
 		}
-		for (int i = 0; i <= 7; i++){
-			for (int j = 0; j <= 7; j++){
-				if (current[i][j].isColor(color)){
-					if ((i == 0)  || (i == 7) || (j == 0) || (j == 7)){
-						score += numConnectedChips(current[i][j]) * 1.5;
-					}
-					else{
-						score += numConnectedChips(current[i][j]);
-					}
+		if (WEIGHTS != null){
+			features(color, featureBuffer);
+			double weighted = 0;
+			for (int i = 0; i < FEATURES; i++){
+				weighted += WEIGHTS[i] * featureBuffer[i];
+			}
+			return (int) Math.round(weighted);
+		}
+		// The running totals are exact when every term is an integer.
+		if (oddEdges == 0){
+			int other = oppositeColor(color);
+			return interiorLinks[color] - interiorLinks[other] + 3 * (goalAreaLinks[color] - goalAreaLinks[other]) / 2;
+		}
+		// Otherwise visit the chips in square order: the running int total
+		// truncates after every 1.5 bonus, so the order has to match the old board.
+		long own = chips(color);
+		for (long all = black | white; all != 0; all &= all - 1){
+			int sq = Long.numberOfTrailingZeros(all);
+			boolean edge = ((BLACK_GOALS | WHITE_GOALS) & (1L << sq)) != 0;
+			int connections = Long.bitCount(links[sq]);
+			if ((own & (1L << sq)) != 0){
+				if (edge){
+					score += connections * 1.5;
 				}
-				if (current[i][j].isColor(oppositeColor(color))){
-					if ((i == 0)  || (i == 7) || (j == 0) || (j == 7)){
-						score -= numConnectedChips(current[i][j]) * 1.5;
-					}
-					else{
-						score -= numConnectedChips(current[i][j]);
-					}
+				else{
+					score += connections;
+				}
+			}
+			else{
+				if (edge){
+					score -= connections * 1.5;
+				}
+				else{
+					score -= connections;
 				}
 			}
 		}
 		return score;
 	}
-	
+
+	/**
+	 * computes the evaluation features of this board for the given color, each
+	 * the color's value less the other color's: the connections of chips
+	 * outside the goal areas, the connections of chips in a goal area, the
+	 * chips in the color's own goals, and whether both of its goals hold a chip
+	 * @param color: the color the features favor when positive
+	 * @param out: receives the FEATURES values, in the order of FEATURE_NAMES
+	 */
+	protected void features(int color, int[] out){
+		int other = oppositeColor(color);
+		long own = chips(color);
+		long opposing = chips(other);
+		out[0] = interiorLinks[color] - interiorLinks[other];
+		out[1] = goalAreaLinks[color] - goalAreaLinks[other];
+		out[2] = Long.bitCount(own & (START_GOAL[color] | END_GOAL[color]))
+				- Long.bitCount(opposing & (START_GOAL[other] | END_GOAL[other]));
+		out[3] = (((own & START_GOAL[color]) != 0 && (own & END_GOAL[color]) != 0) ? 1 : 0)
+				- (((opposing & START_GOAL[other]) != 0 && (opposing & END_GOAL[other]) != 0) ? 1 : 0);
+	}
+
+	/**
+	 * reads a weight set written by Tuner: lines of "name = value" for the
+	 * names in FEATURE_NAMES.  A missing name keeps its weight in
+	 * DEFAULT_WEIGHTS.
+	 * @param file: the weight file
+	 * @return: the weights, in the order of FEATURE_NAMES
+	 * @throws IOException: if the file cannot be read or a value is not a number
+	 */
+	protected static double[] readWeights(File file) throws IOException {
+		Properties properties = new Properties();
+		Reader in = new FileReader(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		double[] weights = DEFAULT_WEIGHTS.clone();
+		for (int i = 0; i < FEATURES; i++){
+			String value = properties.getProperty(FEATURE_NAMES[i]);
+			if (value != null){
+				try {
+					weights[i] = Double.parseDouble(value.trim());
+				} catch (NumberFormatException e){
+					throw new IOException(FEATURE_NAMES[i] + " is not a number: " + value);
+				}
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * Helper method: the weights in the file named by the player.weights
+	 * system property, or null to use the built-in evaluation
+	 */
+	private static double[] loadWeights(){
+		String name = System.getProperty("player.weights");
+		if (name == null){
+			return null;
+		}
+		try {
+			return readWeights(new File(name));
+		} catch (IOException e){
+			System.err.println("Board: cannot read weights from " + name + ": " + e.getMessage());
+			return null;
+		}
+	}
+
 	/**
 	 * Helper method: returns color BLACK if the given color is WHITE; returns WHITE if given BLACK
-	 * @param color: the given color 
+	 * @param color: the given color
 	 * @return color BLACK if the given color is WHITE; returns WHITE if given BLACK
 	 */
 	private int oppositeColor(int color){
@@ -718,111 +1233,286 @@ public class Board {
 		}
 		return 0;
 	}
-  
-  
-public static void main(String args[]){
-	final int BLACK = 0; 
-	final int WHITE = 1; 
-	
-	Board b1 = new Board();
-	Move m1 = new Move(0, 1);
-	Move m2 = new Move(2, 1);
-	Move m3 = new Move(2, 3);
-	Move m4 = new Move(5, 3);
-	Move m5 = new Move(2, 6);
-	Move m6 = new Move(7, 6);
-	Move m7 = new Move(4, 3); 
-	//Move m7 = new Move(1, 6);
-	//Move m8 = new Move(4, 7);
-	//Move m9 = new Move(2,1,3,1);
-
-	//Board b2 = new Board(b1 , m9, 0); 
-
-	b1.action(m1, WHITE);
-	b1.action(m2, WHITE);
-	b1.action(m3, WHITE);
-	b1.action(m4, WHITE);
-	b1.action(m5, WHITE);
-	b1.action(m6, WHITE);
-	//b1.action(m7, WHITE); 
-	//b1.action(m7, BLACK);
-	//b1.action(m8, BLACK);
-    //b1.printBoard();
-    //for (int i =0 ; i < 8 ; i++){
-    	//for (int j = 0; i< 8 ; i++){
-    		//if (b1.current[i][j] == null){
-    			//System.out.println(i);
-    		//}
-    	//}
-    //}
-    //System.out.println(b1.findChips(b1.current[3][0]));
-    //DList list = b1.findChips(b1.current[2][3]); 
-    //System.out.println(b1.numOfWhite);
-    //System.out.println(b1.numOfBlack);
-    //System.out.println(isGoal(b1.current[2][6]));
-    // System.out.println(hasCell(list, b1.current[2][7]));
-    DList list1 = new DList(); 
-    list1. insertBack(b1.current[3][0]);
-    list1. insertBack(b1.current[2][1]);
-    list1. insertBack(b1.current[2][3]);
-    list1. insertBack(b1.current[5][3]);
-    list1. insertBack(b1.current[2][6]);
-    list1. insertBack(b1.current[5][7]);
-    System.out.println(b1.networkId(WHITE));
-    System.out.println(checkNetwork(list1));
-    //System.out.println(list1);
-    //System.out.println(isLine(b1.current[2][1],b1.current[2][3],b1.current[5][3]));
-
-    //System.out.println(list1.length());
-    //System.out.println(isLine(b1.current[3][0], b1.current[2][0],b1.current[4][0]));
-
-
-	Board b2 = new Board();
-	Move m21 = new Move(1, 0);
-	Move m22 = new Move(2, 1);
-	Move m23 = new Move(6, 1);
-	//Move m24 = new Move(6, 3);
-	Move m25 = new Move(4, 5);
-	Move m27 = new Move(6, 7);
-	
-	b2.action(m21, BLACK);
-	b2.action(m22, BLACK);
-	b2.action(m23, BLACK);
-	//b2.action(m24, BLACK);
-	b2.action(m25, BLACK);
-	b2.action(m27, BLACK);
-	
-	Move w1 = new Move(1, 1);
-	Move w2 = new Move(1, 3);
-	Move w3 = new Move(0, 3);
-	Move w4 = new Move(7, 2);
-	Move w5 = new Move(2, 5);
-	Move w6 = new Move(7, 6);
-	
-	b2.action(w1, WHITE);
-	b2.action(w2, WHITE);
-	b2.action(w3, WHITE);
-	b2.action(w4, WHITE);
-	b2.action(w5, WHITE);
-	b2.action(w6, WHITE);
-	
-
-	//Test findchips length
-	Move t1 = new Move(1, 4);
-	b2.action(t1, BLACK);
-	List l222 = b2.findChips(b2.current[t1.x1][t1.y1]);
-	System.out.println("findchips #: " + l222.length());
-	int s1 = b2.evaluation(BLACK, 1);
-	System.out.println("b2 score: " + s1);
-	
-	System.out.println("if hasnetwork: should false: " + b2.networkId(BLACK));
-	b2.printBoard();	
-	
-	
-
-    // problems !!! Board b2 = new Board(b1, m9, BLACK); 
-    
-  }
 
-}
+	/**
+	 * Helper method: checks this board against a CellBoard that has had the same
+	 * moves applied; prints any disagreement
+	 * @return: true if both boards agree on every query
+	 */
+	private boolean sameAs(CellBoard reference, Random random){
+		boolean same = true;
+		for (int color = Cell.BLACK; color <= Cell.WHITE; color++){
+			String mine = listValidMove(color).toString();
+			String theirs = reference.listValidMove(color).toString();
+			if (!mine.equals(theirs)){
+				System.out.println("listValidMove(" + color + ") differs: " + mine + " vs " + theirs);
+				same = false;
+			}
+			if (networkId(color) != reference.networkId(color)){
+				System.out.println("networkId(" + color + ") differs");
+				same = false;
+			}
+			int steps = random.nextInt(4);
+			if (evaluation(color, steps) != reference.evaluation(color, steps)){
+				System.out.println("evaluation(" + color + ") differs: " + evaluation(color, steps)
+						+ " vs " + reference.evaluation(color, steps));
+				same = false;
+			}
+			long own = chips(color);
+			for (long c = own; c != 0; c &= c - 1){
+				int sq = Long.numberOfTrailingZeros(c);
+				if (links[sq] != findChips(sq)){
+					System.out.println("connections of square " + sq + " differ from findChips");
+					same = false;
+				}
+			}
+			for (int i = 0; i < 20; i++){
+				Move probe;
+				if (own != 0 && random.nextBoolean()){
+					int from = Long.numberOfTrailingZeros(own);
+					for (int k = random.nextInt(Long.bitCount(own)); k > 0; k--){
+						from = Long.numberOfTrailingZeros(own & ~((2L << from) - 1));
+					}
+					probe = new Move(random.nextInt(8), random.nextInt(8), from >>> 3, from & 7);
+				} else {
+					probe = new Move(random.nextInt(8), random.nextInt(8));
+				}
+				if (isValidMove(probe, color) != reference.isValidMove(probe, color)){
+					System.out.println("isValidMove(" + probe + ", " + color + ") differs");
+					same = false;
+				}
+			}
+		}
+		return same;
+	}
+
+	public static void main(String args[]){
+		final int BLACK = 0;
+		final int WHITE = 1;
+
+		Board b1 = new Board();
+		b1.action(new Move(0, 1), WHITE);
+		b1.action(new Move(2, 1), WHITE);
+		b1.action(new Move(2, 3), WHITE);
+		b1.action(new Move(5, 3), WHITE);
+		b1.action(new Move(2, 6), WHITE);
+		b1.action(new Move(7, 6), WHITE);
+		System.out.println("b1 white network, should true: " + b1.networkId(WHITE));
 
+		Board b2 = new Board();
+		b2.action(new Move(1, 0), BLACK);
+		b2.action(new Move(2, 1), BLACK);
+		b2.action(new Move(6, 1), BLACK);
+		b2.action(new Move(4, 5), BLACK);
+		b2.action(new Move(6, 7), BLACK);
+		b2.action(new Move(1, 1), WHITE);
+		b2.action(new Move(1, 3), WHITE);
+		b2.action(new Move(0, 3), WHITE);
+		b2.action(new Move(7, 2), WHITE);
+		b2.action(new Move(2, 5), WHITE);
+		b2.action(new Move(7, 6), WHITE);
+		b2.action(new Move(1, 4), BLACK);
+		System.out.println("findchips #: " + Long.bitCount(b2.findChips((1 << 3) | 4)));
+		System.out.println("b2 score: " + b2.evaluation(BLACK, 1));
+		System.out.println("if hasnetwork: should false: " + b2.networkId(BLACK));
+		b2.printBoard();
+
+		// Play random games on a Board and a CellBoard side by side and
+		// compare every query after each move.
+		Random random = new Random(1);
+		int positions = 0;
+		int mismatches = 0;
+		for (int game = 0; game < 200; game++){
+			Board board = new Board();
+			CellBoard reference = new CellBoard();
+			int color = WHITE;
+			for (int ply = 0; ply < 60; ply++){
+				positions++;
+				if (!board.sameAs(reference, random)){
+					mismatches++;
+				}
+				if (board.networkId(BLACK) || board.networkId(WHITE)){
+					break;
+				}
+				DList moves = board.listValidMove(color);
+				try {
+					ListNode node = moves.front();
+					for (int k = random.nextInt(moves.length()); k > 0; k--){
+						node = node.next();
+					}
+					Move m = (Move) node.item();
+					long[] links = board.links.clone();
+					long hash = board.hash;
+					int[] interiorLinks = board.interiorLinks.clone();
+					int[] goalAreaLinks = board.goalAreaLinks.clone();
+					long oddEdges = board.oddEdges;
+					board.action(m, color);
+					board.undo(m, color);
+					if (!java.util.Arrays.equals(links, board.links) || hash != board.hash
+							|| !java.util.Arrays.equals(interiorLinks, board.interiorLinks)
+							|| !java.util.Arrays.equals(goalAreaLinks, board.goalAreaLinks) || oddEdges != board.oddEdges){
+						System.out.println("undo of " + m + " did not restore the board");
+						mismatches++;
+					}
+					Board restored = new Board(board.chips(BLACK), board.chips(WHITE));
+					if (!java.util.Arrays.equals(links, restored.links) || hash != restored.hash
+							|| !java.util.Arrays.equals(interiorLinks, restored.interiorLinks)
+							|| !java.util.Arrays.equals(goalAreaLinks, restored.goalAreaLinks) || oddEdges != restored.oddEdges){
+						System.out.println("restore did not rebuild the board");
+						mismatches++;
+					}
+					board.action(m, color);
+					reference.action(m, color);
+				} catch (InvalidNodeException e){
+					break;
+				}
+				color = 1 - color;
+			}
+		}
+		System.out.println(positions + " positions compared against CellBoard, " + mismatches + " mismatches");
+
+		// Networks are rare in random games, so also compare networkId on
+		// random positions with many chips near the goals.
+		int networks = 0;
+		mismatches = 0;
+		for (int i = 0; i < 20000; i++){
+			Board board = new Board();
+			CellBoard reference = new CellBoard();
+			for (int color = BLACK; color <= WHITE; color++){
+				long forbidden = DEAD | ((color == BLACK) ? WHITE_GOALS : BLACK_GOALS);
+				for (int n = 6 + random.nextInt(5); n > 0; ){
+					int sq = random.nextInt(64);
+					if (((board.black | board.white | forbidden) & (1L << sq)) == 0){
+						Move m = new Move(sq >>> 3, sq & 7);
+						board.action(m, color);
+						reference.action(m, color);
+						n--;
+					}
+				}
+			}
+			for (int color = BLACK; color <= WHITE; color++){
+				if (board.networkId(color)){
+					networks++;
+				}
+				if (board.networkId(color) != reference.networkId(color)){
+					mismatches++;
+				}
+			}
+		}
+		System.out.println("networkId on 20000 random positions: " + networks + " networks, "
+				+ mismatches + " mismatches against CellBoard");
+
+		// Check the moves of one shared board from several threads at once;
+		// validation and generation write nothing, so every thread must agree
+		// with a single-threaded pass.
+		final Board shared = new Board();
+		random = new Random(2);
+		for (int ply = 0, color = WHITE; ply < 30; ply++, color = 1 - color){
+			int[] moves = new int[512];
+			shared.action(moves[random.nextInt(shared.generateMoves(color, moves))], color);
+		}
+		final int sharedLegal = shared.listValidMove(WHITE).length();
+		final int[] disagreements = new int[1];
+		Board before = new Board(shared);
+		Thread[] readers = new Thread[4];
+		for (int t = 0; t < readers.length; t++){
+			readers[t] = new Thread() {
+				public void run(){
+					int[] moves = new int[512];
+					for (int i = 0; i < 2000; i++){
+						int count = 0;
+						for (int x = 0; x < 8; x++){
+							for (int y = 0; y < 8; y++){
+								for (int sq = 0; sq < 64; sq++){
+									if (shared.isValidMove(new Move(x, y, sq >>> 3, sq & 7), WHITE)){
+										count++;
+									}
+								}
+							}
+						}
+						if (count != sharedLegal || shared.generateMoves(WHITE, moves) != sharedLegal){
+							synchronized (disagreements){
+								disagreements[0]++;
+							}
+						}
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for (Thread reader : readers){
+			try {
+				reader.join();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (!java.util.Arrays.equals(before.links, shared.links) || before.black != shared.black
+				|| before.white != shared.white || before.hash != shared.hash
+				|| !java.util.Arrays.equals(before.interiorLinks, shared.interiorLinks)
+				|| !java.util.Arrays.equals(before.goalAreaLinks, shared.goalAreaLinks)
+				|| before.oddEdges != shared.oddEdges || before.networkKnown != shared.networkKnown){
+			System.out.println("checking moves changed the shared board");
+			disagreements[0]++;
+		}
+		System.out.println("isValidMove from " + readers.length + " threads on one board: "
+				+ disagreements[0] + " disagreements with " + sharedLegal + " legal moves");
+
+		// generateBlocks may skip blocks away from the threats, but it must find
+		// one whenever one exists: quiescence scores a position in which it
+		// finds none as a forced loss.
+		int threatened = 0;
+		mismatches = 0;
+		random = new Random(3);
+		int[] threatBuffer = new int[512];
+		int[] blockBuffer = new int[512];
+		int[] moveBuffer = new int[512];
+		for (int game = 0; game < 400; game++){
+			Board board = new Board();
+			int color = WHITE;
+			for (int ply = 0; ply < 60 && !board.networkId(BLACK) && !board.networkId(WHITE); ply++){
+				int threatCount = board.generateThreats(1 - color, threatBuffer);
+				if (threatCount > 0 && board.generateThreats(color, null) == 0){
+					threatened++;
+					int found = board.generateBlocks(color, threatBuffer, threatCount, blockBuffer);
+					int blocking = 0;
+					int moves = board.generateMoves(color, moveBuffer);
+					for (int i = 0; i < moves; i++){
+						board.action(moveBuffer[i], color);
+						if (!board.networkId(1 - color) && board.generateThreats(1 - color, null) == 0){
+							blocking++;
+						}
+						board.undo(moveBuffer[i], color);
+					}
+					if ((found == 0) != (blocking == 0)){
+						mismatches++;
+					}
+				}
+				int moves = board.generateMoves(color, moveBuffer);
+				board.action(moveBuffer[random.nextInt(moves)], color);
+				color = 1 - color;
+			}
+		}
+		System.out.println("generateBlocks on " + threatened + " threatened positions: "
+				+ mismatches + " disagreements with a search of every move about whether a block exists");
+
+		// Count the leaves of the move tree with both generators; Perft has
+		// the full suite of known counts.
+		int[][] buffers = new int[4][512];
+		for (int plies = 0; plies <= 20; plies += 10){
+			Board board = new Board();
+			random = new Random(plies);
+			int color = WHITE;
+			for (int ply = 0; ply < plies; ply++){
+				int count = board.generateMoves(color, buffers[0]);
+				board.action(buffers[0][random.nextInt(count)], color);
+				color = 1 - color;
+			}
+			long listCount = Perft.perft(board, color, 3);
+			long packedCount = Perft.perftPacked(board, color, 3, buffers);
+			System.out.println("perft(3) after " + plies + " plies: listValidMove " + listCount
+					+ ", generateMoves " + packedCount);
+		}
+	}
+
+}
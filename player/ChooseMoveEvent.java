@@ -0,0 +1,50 @@
+/* ChooseMoveEvent.java */
+
+package player;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  A JFR event committed by MachinePlayer.chooseMove when SearchStats.ENABLED
+ *  is set.  Its duration is the time chooseMove took; the counts are those of
+ *  the first search thread, and are 0 for a move that was not searched.
+ */
+@Name("player.ChooseMove")
+@Label("Choose Move")
+@Category("Network")
+@Description("A move chosen by a MachinePlayer")
+final class ChooseMoveEvent extends Event {
+	@Label("Move")
+	String move;
+
+	@Label("Source")
+	@Description("book, solver, ponder or search")
+	String source;
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Selective Depth")
+	int selectiveDepth;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Quiescence Nodes")
+	long quiescenceNodes;
+
+	@Label("Evaluations")
+	long evaluations;
+
+	@Label("networkId Calls")
+	long networkChecks;
+
+	@Label("Beta Cutoffs")
+	long cutoffs;
+
+	@Label("First-Move Cutoffs")
+	long firstMoveCutoffs;
+}
@@ -0,0 +1,130 @@
+/* Corpus.java */
+
+package player;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ *  A corpus of positions in the format of positions.txt: one position per
+ *  line, a name, the color to move, then the moves that lead to the position
+ *  from an empty board, White first.  An add move is written "xy"; a step move
+ *  is "xyXY", from square XY to square xy.  The benchmarks in jmh/ run over
+ *  positions.txt, and Engine, Perft and Tournament read moves in the same
+ *  notation.
+ */
+final class Corpus {
+
+	/**
+	 * A corpus position: its name, the moves that lead to it, the board, the
+	 * color to move, and the valid moves of that color in both Move and packed
+	 * form.
+	 */
+	protected static class Position {
+		protected final String name;
+		protected final Move[] history;
+		protected final Board board;
+		protected final int color;
+		protected final Move[] moves;
+		protected final int[] packed;
+
+		Position(String name, Move[] history, Board board, int color){
+			this.name = name;
+			this.history = history;
+			this.board = board;
+			this.color = color;
+			int[] buffer = new int[512];
+			int count = board.generateMoves(color, buffer);
+			packed = new int[count];
+			moves = new Move[count];
+			for (int i = 0; i < count; i++){
+				packed[i] = buffer[i];
+				moves[i] = PackedMove.unpack(buffer[i]);
+			}
+		}
+
+		/**
+		 * plays the moves that lead to this position into a new player
+		 * @param player: a player of the color to move, that has not moved yet
+		 * @return: the player
+		 */
+		protected MachinePlayer replay(MachinePlayer player){
+			for (int i = 0; i < history.length; i++){
+				if ((((i & 1) == 0) ? Cell.WHITE : Cell.BLACK) == color){
+					player.forceMove(history[i]);
+				} else {
+					player.opponentMove(history[i]);
+				}
+			}
+			return player;
+		}
+	}
+
+	private Corpus(){
+	}
+
+	/**
+	 * reads a corpus in the format described at the top of positions.txt
+	 * @param in: the corpus text; it is closed
+	 * @return: the positions, in file order
+	 */
+	protected static Position[] read(Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		ArrayList<Position> positions = new ArrayList<Position>();
+		try {
+			String line;
+			while ((line = reader.readLine()) != null){
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")){
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				Board board = new Board();
+				Move[] history = new Move[fields.length - 2];
+				int color = Cell.WHITE;
+				for (int i = 2; i < fields.length; i++){
+					history[i - 2] = parseMove(fields[i]);
+					board.action(history[i - 2], color);
+					color = 1 - color;
+				}
+				int toMove = fields[1].equals("white") ? Cell.WHITE : Cell.BLACK;
+				if (toMove != color){
+					throw new IOException(fields[0] + ": the moves leave " + (color == Cell.WHITE ? "white" : "black")
+							+ " to move, not " + fields[1]);
+				}
+				positions.add(new Position(fields[0], history, board, toMove));
+			}
+		} finally {
+			reader.close();
+		}
+		return positions.toArray(new Position[positions.size()]);
+	}
+
+	/**
+	 * reads positions.txt from next to this class, on the class path or in a jar
+	 * @return: the positions, in file order
+	 * @throws IOException: if positions.txt cannot be found or read
+	 */
+	protected static Position[] readDefault() throws IOException {
+		InputStream stream = Corpus.class.getResourceAsStream("positions.txt");
+		if (stream == null){
+			throw new IOException("positions.txt is not on the class path");
+		}
+		return read(new InputStreamReader(stream, "UTF-8"));
+	}
+
+	/**
+	 * Helper method: parses "xy" as an add move and "xyXY" as a step move
+	 */
+	protected static Move parseMove(String s){
+		int x1 = Character.getNumericValue(s.charAt(0));
+		int y1 = Character.getNumericValue(s.charAt(1));
+		if (s.length() == 2){
+			return new Move(x1, y1);
+		}
+		return new Move(x1, y1, Character.getNumericValue(s.charAt(2)), Character.getNumericValue(s.charAt(3)));
+	}
+}
@@ -0,0 +1,495 @@
+/* Engine.java */
+
+package player;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  A long-lived engine process driven over stdin and stdout with a UCI-like
+ *  text protocol, so that one warmed-up JVM can serve any number of searches.
+ *  Moves are written as in positions.txt: "xy" adds a chip at xy, "xyXY"
+ *  steps the chip at XY to xy.
+ *
+ *      uci                        prints the engine's id and options, then uciok
+ *      isready                    prints readyok
+ *      setoption name N value V   Hash (log2 of the slots of each table, default 20),
+ *                                 Threads, Quiescence, OwnBook (true/false),
+ *                                 Solver (proof-number nodes; 0 is off)
+ *      ucinewgame                 clears the transposition tables, one per
+ *                                 color
+ *      position [startpos] [moves m1 m2 ...]
+ *                                 the position after the moves, White first
+ *      go [depth N] [movetime MS] [nodes N] [infinite] [ponder]
+ *                                 searches the position for the color to move,
+ *                                 printing an info line per completed depth,
+ *                                 then "bestmove m [ponder m]"; with no limit,
+ *                                 or with infinite or ponder, bestmove waits
+ *                                 for stop (or ponderhit)
+ *      ponderhit                  the pondered move was played: the search
+ *                                 goes on under the movetime given with go
+ *      stop                       ends the search; bestmove is printed
+ *      d                          prints the board
+ *      quit
+ *
+ *  Info lines read "info depth D seldepth S score cp X nodes N nps N time MS
+ *  pv m1 m2 ...", where X is the evaluation for the color to move; a network
+ *  found by the search is reported as "score mate P", P plies ahead, negative
+ *  if it is the opponent's.  The book and the solver are only consulted by a
+ *  go that is neither infinite nor ponder.
+ */
+final class Engine {
+	private final static String NAME = "Network MachinePlayer";
+	private final static int MAX_DEPTH = 64;
+	private final static OpeningBook BOOK = OpeningBook.openDefault();
+
+	private Board board = new Board();
+	private int toMove = Cell.WHITE;
+	private int hashBits = 20;
+	private TranspositionTable[] tables = newTables(hashBits);
+	private int threads = 1;
+	private int quiescenceDepth = Searcher.QUIESCENCE_DEPTH;
+	private boolean ownBook = true;
+	private int solverNodes = 50000;
+	private Searcher[][] searchers;
+	private ExecutorService helpers;
+	private final ExecutorService searchThread = Executors.newSingleThreadExecutor(daemons("Engine search"));
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemons("Engine timer"));
+	private Future<?> running;
+	private volatile Searcher[] active;
+	private volatile CountDownLatch release;
+	private volatile long movetime;
+	private volatile int searchId;
+
+	private Engine(){
+		setThreads(1);
+	}
+
+	/**
+	 * Helper method: a factory of daemon threads with the given name
+	 */
+	private static ThreadFactory daemons(final String name){
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Helper method: prints a line of the protocol
+	 */
+	private static synchronized void send(String line){
+		System.out.println(line);
+		System.out.flush();
+	}
+
+	/**
+	 * Helper method: a move in the positions.txt notation
+	 */
+	private static String notation(Move m){
+		if (m == null){
+			return "(none)";
+		}
+		return (m.moveKind == Move.STEP) ? "" + m.x1 + m.y1 + m.x2 + m.y2 : "" + m.x1 + m.y1;
+	}
+
+	/**
+	 * Helper method: makes a transposition table for each color.  A Searcher
+	 * stores its scores from its own color's point of view, so the two colors
+	 * cannot share a table.
+	 */
+	private static TranspositionTable[] newTables(int bits){
+		return new TranspositionTable[] {new TranspositionTable(bits, TranspositionTable.DEPTH_PREFERRED),
+				new TranspositionTable(bits, TranspositionTable.DEPTH_PREFERRED)};
+	}
+
+	/**
+	 * Helper method: makes threads searchers for each color
+	 */
+	private void setThreads(int n){
+		threads = Math.max(1, n);
+		searchers = new Searcher[2][threads];
+		for (int color = 0; color < 2; color++){
+			for (int i = 0; i < threads; i++){
+				searchers[color][i] = new Searcher(color);
+			}
+		}
+		if (helpers != null){
+			helpers.shutdown();
+			helpers = null;
+		}
+		if (threads > 1){
+			helpers = Executors.newFixedThreadPool(threads - 1, daemons("Engine helper"));
+		}
+	}
+
+	/**
+	 * Helper method: handles a setoption command
+	 */
+	private void setOption(String name, String value){
+		try {
+			if (name.equalsIgnoreCase("Hash")){
+				hashBits = Math.max(10, Math.min(28, Integer.parseInt(value)));
+				tables = newTables(hashBits);
+			} else if (name.equalsIgnoreCase("Threads")){
+				setThreads(Integer.parseInt(value));
+			} else if (name.equalsIgnoreCase("Quiescence")){
+				quiescenceDepth = Integer.parseInt(value);
+			} else if (name.equalsIgnoreCase("OwnBook")){
+				ownBook = value.equalsIgnoreCase("true");
+			} else if (name.equalsIgnoreCase("Solver")){
+				solverNodes = Integer.parseInt(value);
+			} else {
+				send("info string unknown option " + name);
+			}
+		} catch (NumberFormatException e){
+			send("info string not a number: " + value);
+		}
+	}
+
+	/**
+	 * Helper method: handles a position command
+	 */
+	private void position(String[] tokens){
+		board = new Board();
+		toMove = Cell.WHITE;
+		int i = 1;
+		if (i < tokens.length && tokens[i].equals("startpos")){
+			i++;
+		}
+		if (i < tokens.length && tokens[i].equals("moves")){
+			i++;
+		}
+		for (; i < tokens.length; i++){
+			Move m = null;
+			if (tokens[i].matches("[0-7]{2}|[0-7]{4}")){
+				m = Corpus.parseMove(tokens[i]);
+			}
+			if (m == null || !board.isValidMove(m, toMove)){
+				send("info string invalid move " + tokens[i] + "; position set up to the move before");
+				return;
+			}
+			board.action(m, toMove);
+			toMove = 1 - toMove;
+		}
+	}
+
+	/**
+	 * Helper method: the principal variation from the table, starting from
+	 * the position searched
+	 */
+	private String principalVariation(Board root, int color, int depth){
+		TranspositionTable table = tables[color];
+		Board b = new Board(root);
+		StringBuilder pv = new StringBuilder();
+		for (int i = 0; i < depth && !b.networkId(Cell.WHITE) && !b.networkId(Cell.BLACK); i++){
+			Move m = PackedMove.unpack(TranspositionTable.move(table.probe(b.hash(color))));
+			if (m == null || !b.isValidMove(m, color)){
+				break;
+			}
+			pv.append(i == 0 ? "" : " ").append(notation(m));
+			b.action(m, color);
+			color = 1 - color;
+		}
+		return pv.toString();
+	}
+
+	/**
+	 * Helper method: the number of plies to the network a score stands for,
+	 * negative if it is the opponent's, or 0 if the score is an evaluation.
+	 * The search scores a network n plies ahead Integer.MAX_VALUE / n.
+	 */
+	private static int networkPlies(int score){
+		int bound = Integer.MAX_VALUE / (MAX_DEPTH + 2);
+		if (score >= bound){
+			return Integer.MAX_VALUE / score;
+		} else if (score <= -bound){
+			return -(Integer.MIN_VALUE / score);
+		}
+		return 0;
+	}
+
+	/**
+	 * Helper method: handles a go command by starting a search on the search
+	 * thread
+	 */
+	private void go(String[] tokens){
+		stopSearch();
+		int depth = MAX_DEPTH;
+		long time = 0;
+		long nodes = 0;
+		boolean infinite = false;
+		boolean ponder = false;
+		try {
+			for (int i = 1; i < tokens.length; i++){
+				if (tokens[i].equals("depth")){
+					depth = Integer.parseInt(tokens[++i]);
+				} else if (tokens[i].equals("movetime")){
+					time = Long.parseLong(tokens[++i]);
+				} else if (tokens[i].equals("nodes")){
+					nodes = Long.parseLong(tokens[++i]);
+				} else if (tokens[i].equals("infinite")){
+					infinite = true;
+				} else if (tokens[i].equals("ponder")){
+					ponder = true;
+				}
+			}
+		} catch (RuntimeException e){
+			send("info string bad go command");
+			return;
+		}
+		if (depth == MAX_DEPTH && time == 0 && nodes == 0){
+			infinite = true;
+		}
+		final Board root = new Board(board);
+		final int color = toMove;
+		final int maxDepth = Math.max(1, Math.min(depth, MAX_DEPTH));
+		final long nodeLimit = nodes;
+		final boolean quick = !infinite && !ponder;
+		movetime = time;
+		searchId++;
+		release = new CountDownLatch((infinite || ponder) ? 1 : 0);
+		final Searcher[] group = searchers[color];
+		active = group;
+		// A ponder search runs without a clock until ponderhit starts it.
+		final long limit = ponder ? 0 : time;
+		// The searchers are set up here rather than on the search thread:
+		// setUp clears a searcher's stop flag, and a stop read after go must
+		// not be undone by a search thread that has not started yet.
+		for (int i = 0; i < group.length; i++){
+			group[i].quiescenceDepth = quiescenceDepth;
+			group[i].nodeLimit = (i == 0) ? nodeLimit : 0;
+			group[i].setUp(root, tables[color], (i == 0) ? 1 : 1 + (i & 1), maxDepth, limit);
+		}
+		running = searchThread.submit(new Runnable() {
+			public void run(){
+				Move best = null;
+				try {
+					best = choose(root, color, group, quick);
+				} finally {
+					try {
+						release.await();
+					} catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+					Move reply = null;
+					if (best != null){
+						Board after = new Board(root);
+						after.action(best, color);
+						reply = PackedMove.unpack(TranspositionTable.move(tables[color].probe(after.hash(1 - color))));
+						if (reply != null && (after.networkId(color) || after.networkId(1 - color)
+								|| !after.isValidMove(reply, 1 - color))){
+							reply = null;
+						}
+					}
+					send("bestmove " + notation(best) + (reply != null ? " ponder " + notation(reply) : ""));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Helper method: chooses a move on the search thread, from the book, the
+	 * solver or a search by the given searchers, which go has set up
+	 * @param quick: true to try the book and the solver before searching
+	 * @return: the move, or null if the game is over
+	 */
+	private Move choose(Board root, int color, Searcher[] group, boolean quick){
+		if (root.networkId(Cell.WHITE) || root.networkId(Cell.BLACK)){
+			send("info string the game is over");
+			return null;
+		}
+		if (quick && ownBook && BOOK != null){
+			Move m = BOOK.probe(root, color, null);
+			if (m != null){
+				send("info string book move");
+				return m;
+			}
+		}
+		if (quick && solverNodes > 0 && (root.nearNetwork(color) || root.nearNetwork(1 - color))){
+			ProofSearch solver = new ProofSearch(solverNodes, 5);
+			if (solver.solve(root, color) == ProofSearch.PROVEN){
+				send("info string solver proved a network in " + solver.nodes + " nodes");
+				return PackedMove.unpack(solver.move);
+			}
+		}
+		final Board position = root;
+		final int side = color;
+		final long start = System.currentTimeMillis();
+		final Searcher[] all = group;
+		Future<?>[] helping = new Future<?>[group.length];
+		for (int i = 1; i < group.length; i++){
+			helping[i] = helpers.submit(group[i]);
+		}
+		Searcher main = group[0];
+		main.progress = new Searcher.Progress() {
+			public void iteration(Searcher s, int depth, int score){
+				long nodes = 0;
+				for (Searcher t : all){
+					nodes += t.nodes;
+				}
+				long millis = Math.max(1, System.currentTimeMillis() - start);
+				int plies = networkPlies(score);
+				if (plies != 0 && depth >= Math.abs(plies)){
+					// Deeper iterations cannot change a network within reach.
+					s.stop();
+				}
+				send("info depth " + depth + " seldepth " + Math.max(depth, s.selectiveDepth)
+						+ " score " + (plies != 0 ? "mate " + plies : "cp " + score)
+						+ " nodes " + nodes + " nps " + (1000 * nodes / millis) + " time " + millis
+						+ " pv " + principalVariation(position, side, depth));
+			}
+		};
+		Move best = main.search();
+		for (int i = 1; i < group.length; i++){
+			group[i].stop();
+		}
+		for (int i = 1; i < group.length; i++){
+			try {
+				helping[i].get();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		if (SearchStats.ENABLED){
+			for (int i = 0; i < group.length; i++){
+				SearchStats.INSTANCE.record(group[i], i == 0);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Helper method: ends a ponder or infinite search at once
+	 */
+	private void stop(){
+		Searcher[] group = active;
+		if (group != null){
+			for (Searcher s : group){
+				s.stop();
+			}
+		}
+		CountDownLatch r = release;
+		if (r != null){
+			r.countDown();
+		}
+	}
+
+	/**
+	 * Helper method: the pondered move was played; the search gets movetime
+	 * from now, or runs until its depth or node limit, or stop, if go gave no
+	 * movetime
+	 */
+	private void ponderHit(){
+		long time = movetime;
+		if (time > 0){
+			final int id = searchId;
+			final Searcher[] group = active;
+			timer.schedule(new Runnable() {
+				public void run(){
+					if (searchId == id && group != null){
+						for (Searcher s : group){
+							s.stop();
+						}
+					}
+				}
+			}, time, TimeUnit.MILLISECONDS);
+		}
+		CountDownLatch r = release;
+		if (r != null){
+			r.countDown();
+		}
+	}
+
+	/**
+	 * Helper method: stops the running search, if any, and waits until its
+	 * bestmove is out
+	 */
+	private void stopSearch(){
+		if (running == null){
+			return;
+		}
+		stop();
+		try {
+			running.get();
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e){
+			send("info string search failed: " + e.getCause());
+		}
+		running = null;
+		active = null;
+	}
+
+	/**
+	 * reads commands until quit or the end of the input
+	 */
+	private void run() throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = in.readLine()) != null){
+			String[] tokens = line.trim().split("\\s+");
+			String command = tokens[0];
+			if (command.equals("uci")){
+				send("id name " + NAME);
+				send("id author the player package");
+				send("option name Hash type spin default 20 min 10 max 28");
+				send("option name Threads type spin default 1 min 1 max 64");
+				send("option name Quiescence type spin default " + Searcher.QUIESCENCE_DEPTH + " min 0 max 16");
+				send("option name OwnBook type check default true");
+				send("option name Solver type spin default 50000 min 0 max 10000000");
+				send("uciok");
+			} else if (command.equals("isready")){
+				send("readyok");
+			} else if (command.equals("setoption")){
+				stopSearch();
+				int name = line.indexOf(" name ");
+				int value = line.indexOf(" value ");
+				if (name < 0){
+					send("info string setoption needs a name");
+				} else {
+					setOption(line.substring(name + 6, (value > name) ? value : line.length()).trim(),
+							(value > name) ? line.substring(value + 7).trim() : "");
+				}
+			} else if (command.equals("ucinewgame")){
+				stopSearch();
+				tables[Cell.BLACK].clear();
+				tables[Cell.WHITE].clear();
+			} else if (command.equals("position")){
+				stopSearch();
+				position(tokens);
+			} else if (command.equals("go")){
+				go(tokens);
+			} else if (command.equals("stop")){
+				stopSearch();
+			} else if (command.equals("ponderhit")){
+				ponderHit();
+			} else if (command.equals("d")){
+				board.printBoard();
+				send((toMove == Cell.WHITE ? "white" : "black") + " to move");
+			} else if (command.equals("quit")){
+				break;
+			} else if (command.length() > 0){
+				send("info string unknown command " + command);
+			}
+		}
+		stopSearch();
+	}
+
+	public static void main(String args[]) throws IOException {
+		new Engine().run();
+	}
+}
@@ -0,0 +1,514 @@
+/* GameClient.java */
+
+package player;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *  Plays many games at once against a server that speaks the NetworkClient
+ *  protocol (see GameServer), each with its own MachinePlayer, from one
+ *  selector thread.  Where NetworkClient blocks in readLine for every
+ *  opponent move and flushes after every write, a GameClient never blocks on
+ *  the network:
+ *
+ *  - the game number is sent right after connecting, without waiting for the
+ *    server's version line, and the lines produced while handling one round
+ *    of network events are written together;
+ *  - the MachinePlayers think on a pool of threads, and ponder on their own
+ *    threads while the opponent's move is on its way;
+ *  - each game has its own deadline: the opponent's move must arrive within
+ *    -wait milliseconds, and a seat within -setup milliseconds (180 s, the
+ *    socket timeout NetworkClient uses), or the game is given up with [quit].
+ *
+ *  Usage: java player.GameClient [-host H (default localhost)]
+ *             [-port N (default 12345)] [-games N (default 1)]
+ *             [-room N (default 1; game i uses room N + i)]
+ *             [-seats 1|2 (2 takes both seats of every room)]
+ *             [-depth N] [-time MS] [-ponder] [-threads N (default: cores)]
+ *             [-hash N (log2 of each player's table slots, default 16)]
+ *             [-wait MS (default 180000)] [-setup MS (default 180000)]
+ *             [-records file]
+ */
+final class GameClient {
+	private final static int VERSION_STAGE = 0;
+	private final static int COLOR_STAGE = 1;
+	private final static int PLAYING = 2;
+	private final static int DONE = 3;
+	private final static int MAX_LINE = 128;
+	private final static byte[] CRLF = {'\r', '\n'};
+
+	/**
+	 * One game, its connection and its player.  Only the selector thread
+	 * touches a game, except for the player, which is only used by the one
+	 * task thinking for it at a time.
+	 */
+	private static class Game {
+		final String room;
+		final SocketChannel channel;
+		SelectionKey key;
+		ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+		ByteBuffer out = ByteBuffer.allocate(64);
+		int stage = VERSION_STAGE;
+		MachinePlayer player;
+		int color;
+		final Board board = new Board();
+		final GameRecord record = new GameRecord();
+		int turn = Cell.WHITE;
+		long turnStart;
+		long deadline;
+		boolean thinking;
+		Move reply;
+		String outcome;
+
+		Game(String room, SocketChannel channel){
+			this.room = room;
+			this.channel = channel;
+		}
+	}
+
+	private final Selector selector;
+	private final ExecutorService thinkers;
+	private final ConcurrentLinkedQueue<Game> replies = new ConcurrentLinkedQueue<Game>();
+	private final ArrayList<Game> games = new ArrayList<Game>();
+	private final ArrayList<Game> written = new ArrayList<Game>();
+	private final int depth;
+	private final long timeLimit;
+	private final boolean ponder;
+	private final int hashBits;
+	private final long waitMillis;
+	private final long setupMillis;
+	private final GameRecord.Writer records;
+	private int running;
+	private int wins;
+	private int losses;
+	private int unfinished;
+	private long opponentMoves;
+	private long waitNanos;
+
+	private GameClient(int threads, int depth, long timeLimit, boolean ponder, int hashBits, long waitMillis,
+			long setupMillis, GameRecord.Writer records) throws IOException {
+		selector = Selector.open();
+		thinkers = Executors.newFixedThreadPool(threads);
+		this.depth = depth;
+		this.timeLimit = timeLimit;
+		this.ponder = ponder;
+		this.hashBits = hashBits;
+		this.waitMillis = waitMillis;
+		this.setupMillis = setupMillis;
+		this.records = records;
+	}
+
+	/**
+	 * opens the connection of a new game and queues its game number
+	 * @param address: the server
+	 * @param room: the game number to ask for
+	 */
+	private void connect(InetSocketAddress address, String room) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Game game = new Game(room, channel);
+		game.deadline = System.currentTimeMillis() + setupMillis;
+		if (channel.connect(address)){
+			game.key = channel.register(selector, SelectionKey.OP_READ, game);
+		} else {
+			game.key = channel.register(selector, SelectionKey.OP_CONNECT, game);
+		}
+		send(game, room);
+		games.add(game);
+		running++;
+	}
+
+	/**
+	 * runs the games until all of them are over
+	 */
+	private void run() throws IOException {
+		while (running > 0){
+			selector.select(100);
+			for (Game game; (game = replies.poll()) != null;){
+				played(game);
+			}
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()){
+				SelectionKey key = keys.next();
+				keys.remove();
+				Game game = (Game) key.attachment();
+				if (key.isValid() && key.isConnectable()){
+					try {
+						game.channel.finishConnect();
+						key.interestOps(SelectionKey.OP_READ);
+						written.add(game);
+					} catch (IOException e){
+						finish(game, GameRecord.UNFINISHED, "cannot connect: " + e.getMessage());
+					}
+				} else if (key.isValid() && key.isReadable()){
+					read(game);
+				}
+				if (key.isValid() && key.isWritable()){
+					written.add(game);
+				}
+			}
+			for (Game game : written){
+				flush(game);
+			}
+			written.clear();
+			long now = System.currentTimeMillis();
+			for (Game game : games){
+				if (game.stage != DONE && now > game.deadline){
+					if (game.stage == PLAYING){
+						send(game, new Move().toString());
+					}
+					finish(game, (game.stage == PLAYING) ? 1 - game.color : GameRecord.UNFINISHED, "gave up waiting for the "
+							+ (game.stage == PLAYING ? "opponent's move" : "game to start"));
+					flush(game);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method: reads what the server has sent and handles each
+	 * complete line
+	 */
+	private void read(Game game) throws IOException {
+		int n;
+		try {
+			n = game.channel.read(game.in);
+		} catch (IOException e){
+			n = -1;
+		}
+		if (n < 0){
+			finish(game, GameRecord.UNFINISHED, "the server closed the connection");
+			close(game);
+			return;
+		}
+		for (int i = 0; i < game.in.position() && game.stage != DONE; i++){
+			if (game.in.get(i) == '\n'){
+				int end = (i > 0 && game.in.get(i - 1) == '\r') ? i - 1 : i;
+				String line = new String(game.in.array(), 0, end, StandardCharsets.US_ASCII);
+				game.in.flip();
+				game.in.position(i + 1);
+				game.in.compact();
+				line(game, line);
+				i = -1;
+			}
+		}
+		if (!game.in.hasRemaining()){
+			finish(game, GameRecord.UNFINISHED, "the server sent a line that is too long");
+			close(game);
+		}
+	}
+
+	/**
+	 * Helper method: handles one line from the server
+	 */
+	private void line(Game game, String line) throws IOException {
+		if (game.stage == VERSION_STAGE){
+			if (!line.equals(GameServer.VERSION)){
+				finish(game, GameRecord.UNFINISHED, "the server runs version " + line);
+				close(game);
+				return;
+			}
+			game.stage = COLOR_STAGE;
+		} else if (game.stage == COLOR_STAGE){
+			if (!line.equals("white") && !line.equals("black")){
+				finish(game, GameRecord.UNFINISHED, "no color was received: " + line);
+				close(game);
+				return;
+			}
+			game.color = line.equals("white") ? Cell.WHITE : Cell.BLACK;
+			game.player = new MachinePlayer(game.color, depth, timeLimit,
+					new TranspositionTable(hashBits, TranspositionTable.DEPTH_PREFERRED));
+			game.player.setPondering(ponder);
+			game.record.metadata = "room=" + game.room + " color=" + line;
+			game.stage = PLAYING;
+			game.turnStart = System.currentTimeMillis();
+			if (game.color == Cell.WHITE){
+				think(game, null);
+			} else {
+				game.deadline = game.turnStart + waitMillis;
+			}
+		} else {
+			Move m = GameServer.parseMove(line);
+			int opponent = 1 - game.color;
+			if (m == null){
+				finish(game, GameRecord.UNFINISHED, "the server responded with: " + line);
+			} else if (m.moveKind == Move.QUIT){
+				finish(game, game.color, "the opponent quit");
+			} else if (game.turn != opponent){
+				finish(game, GameRecord.UNFINISHED, "a move arrived out of turn: " + line);
+			} else if (!game.board.isValidMove(m, opponent)){
+				finish(game, GameRecord.UNFINISHED, "the opponent's move is invalid: " + line);
+			} else {
+				long now = System.currentTimeMillis();
+				opponentMoves++;
+				waitNanos += 1000000 * (now - game.turnStart);
+				if (!apply(game, m, opponent, now)){
+					think(game, m);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method: has the game's player take in the opponent's move, if
+	 * any, and choose a reply on the pool; the reply comes back through
+	 * replies
+	 */
+	private void think(final Game game, final Move opponentMove){
+		game.deadline = Long.MAX_VALUE;
+		game.turnStart = System.currentTimeMillis();
+		game.thinking = true;
+		thinkers.submit(new Runnable() {
+			public void run(){
+				Move m = null;
+				try {
+					if (opponentMove != null){
+						game.player.opponentMove(opponentMove);
+					}
+					m = game.player.chooseMove();
+				} finally {
+					game.reply = m;
+					replies.add(game);
+					selector.wakeup();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Helper method: sends the move a player has chosen
+	 */
+	private void played(Game game) throws IOException {
+		Move m = game.reply;
+		game.reply = null;
+		game.thinking = false;
+		if (game.stage == DONE){
+			release(game);
+			return;
+		}
+		if (m == null || m.moveKind == Move.QUIT || !game.board.isValidMove(m, game.color)){
+			send(game, new Move().toString());
+			finish(game, 1 - game.color, "the player " + (m == null ? "had no move" : "played " + m));
+			return;
+		}
+		send(game, m.toString());
+		long now = System.currentTimeMillis();
+		if (!apply(game, m, game.color, now)){
+			game.deadline = now + waitMillis;
+		}
+	}
+
+	/**
+	 * Helper method: plays a move on the game's board and records it
+	 * @return: true if it ended the game
+	 */
+	private boolean apply(Game game, Move m, int color, long now){
+		game.board.action(m, color);
+		game.record.add(PackedMove.pack(m), 0, (int) Math.max(now - game.turnStart, 1));
+		game.turn = 1 - color;
+		game.turnStart = now;
+		if (game.board.networkId(1 - color)){
+			finish(game, 1 - color, null);
+			return true;
+		} else if (game.board.networkId(color)){
+			finish(game, color, null);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method: ends a game; its connection is closed once what it has
+	 * been sent is written
+	 * @param result: the winner, or GameRecord.UNFINISHED
+	 * @param why: the reason a game ended other than by a network, or null
+	 */
+	private void finish(Game game, int result, String why){
+		if (game.stage == DONE){
+			return;
+		}
+		game.stage = DONE;
+		game.outcome = why;
+		game.record.result = result;
+		running--;
+		if (result == game.color){
+			wins++;
+		} else if (result == 1 - game.color){
+			losses++;
+		} else {
+			unfinished++;
+		}
+		if (why != null){
+			System.out.println("room " + game.room + ": " + why);
+		}
+		if (!game.thinking){
+			release(game);
+		}
+		if (records != null && game.record.plies > 0){
+			try {
+				records.write(game.record);
+			} catch (IOException e){
+				System.err.println("GameClient: " + e);
+			}
+		}
+		written.add(game);
+	}
+
+	/**
+	 * Helper method: closes a finished game's player, once no task is
+	 * thinking for it
+	 */
+	private void release(Game game){
+		if (game.player != null){
+			final MachinePlayer player = game.player;
+			thinkers.submit(new Runnable() {
+				public void run(){
+					player.close();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Helper method: queues a line; it is written with the other lines of
+	 * this round of events
+	 */
+	private void send(Game game, String line){
+		byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+		if (game.out.remaining() < bytes.length + CRLF.length){
+			ByteBuffer bigger = ByteBuffer.allocate(2 * (game.out.position() + bytes.length + CRLF.length));
+			game.out.flip();
+			bigger.put(game.out);
+			game.out = bigger;
+		}
+		game.out.put(bytes).put(CRLF);
+		written.add(game);
+	}
+
+	/**
+	 * Helper method: writes what the channel will take, and asks the selector
+	 * to say when it will take more; closes a finished game once its output
+	 * is written
+	 */
+	private void flush(Game game){
+		if (!game.channel.isOpen() || !game.channel.isConnected()){
+			return;
+		}
+		game.out.flip();
+		try {
+			game.channel.write(game.out);
+		} catch (IOException e){
+			game.out.clear();
+			finish(game, GameRecord.UNFINISHED, "cannot write: " + e.getMessage());
+			close(game);
+			return;
+		}
+		game.out.compact();
+		if (game.out.position() > 0){
+			game.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else if (game.stage == DONE){
+			close(game);
+		} else {
+			game.key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Helper method: closes a game's connection
+	 */
+	private static void close(Game game){
+		game.key.cancel();
+		try {
+			game.channel.close();
+		} catch (IOException e){
+			// Nothing more can be done with it.
+		}
+	}
+
+	public static void main(String args[]) throws IOException {
+		String host = "localhost";
+		int port = GameServer.PORT;
+		int count = 1;
+		int room = 1;
+		int seats = 1;
+		int depth = 3;
+		long timeLimit = 0;
+		boolean ponder = false;
+		int hashBits = 16;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long waitMillis = 180000;
+		long setupMillis = 180000;
+		String recordFile = null;
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-host")){
+				host = args[++i];
+			} else if (args[i].equals("-port")){
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-games")){
+				count = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-room")){
+				room = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-seats")){
+				seats = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-depth")){
+				depth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")){
+				timeLimit = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-ponder")){
+				ponder = true;
+			} else if (args[i].equals("-hash")){
+				hashBits = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")){
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-wait")){
+				waitMillis = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-setup")){
+				setupMillis = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-records")){
+				recordFile = args[++i];
+			} else {
+				System.out.println("usage: java player.GameClient [-host H] [-port N] [-games N] [-room N] [-seats 1|2]"
+						+ " [-depth N] [-time MS] [-ponder] [-threads N] [-hash N] [-wait MS] [-setup MS] [-records file]");
+				return;
+			}
+		}
+		GameRecord.Writer records = (recordFile != null) ? new GameRecord.Writer(new File(recordFile)) : null;
+		GameClient client = new GameClient(threads, depth, timeLimit, ponder, hashBits, waitMillis, setupMillis, records);
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++){
+			for (int seat = 0; seat < seats; seat++){
+				client.connect(address, Integer.toString(room + i));
+			}
+		}
+		try {
+			client.run();
+		} finally {
+			client.thinkers.shutdown();
+			if (records != null){
+				records.close();
+			}
+		}
+		long plies = 0;
+		for (Game game : client.games){
+			plies += game.record.plies;
+		}
+		System.out.println(String.format("%d games: %d won, %d lost, %d unfinished; %d plies in %.1f s, "
+				+ "%.1f ms average wait for the opponent",
+				client.games.size(), client.wins, client.losses, client.unfinished, plies,
+				(System.currentTimeMillis() - start) / 1000.0,
+				client.waitNanos / 1e6 / Math.max(1, client.opponentMoves)));
+	}
+}
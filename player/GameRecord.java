@@ -0,0 +1,420 @@
+/* GameRecord.java */
+
+package player;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *  A recorded game: its moves as packed moves (see PackedMove), its result,
+ *  a free-form metadata string, and optionally an evaluation and a thinking
+ *  time for each move.
+ *
+ *  Games are stored in an append-only binary file: the magic number and the
+ *  version as big-endian ints, then one record per game.  A record is
+ *
+ *      u16 plies, u8 result, u8 flags, u16 metadata length, metadata (UTF-8),
+ *      plies x u16 packed moves,
+ *      plies x i32 evaluations, if flags has EVALS,
+ *      plies x i32 milliseconds, if flags has TIMES
+ *
+ *  Records carry no length of their own, so a record cut short by a crash
+ *  while it was written would swallow whatever is appended after it.  The
+ *  reader stops at such a record, and the writer cuts the file back to the
+ *  end of the last whole record before it appends anything.
+ *
+ *  Usage: java player.GameRecord show file [games]
+ *             prints the games
+ *         java player.GameRecord replay file
+ *             replays every game through Board.action and reports the speed
+ *         java player.GameRecord check
+ *             checks that games appended after a cut-off record read back
+ */
+final class GameRecord {
+	protected final static int BLACK_WINS = Cell.BLACK;
+	protected final static int WHITE_WINS = Cell.WHITE;
+	protected final static int DRAW = 2;
+	protected final static int UNFINISHED = 3;
+
+	private final static int MAGIC = 0x4E574752; // "NWGR"
+	private final static int VERSION = 1;
+	private final static int HEADER = 8;
+	private final static int EVALS = 1;
+	private final static int TIMES = 2;
+	private final static int MAX_PLIES = 0xFFFF;
+
+	protected int plies;
+	protected int result = UNFINISHED;
+	protected String metadata = "";
+	protected int[] moves = new int[64];
+	protected int[] evals;
+	protected int[] times;
+
+	/**
+	 * adds a move to the end of the game
+	 * @param move: the packed move
+	 * @param eval: the mover's evaluation of the move, or 0
+	 * @param millis: the time the move took, or 0
+	 */
+	protected void add(int move, int eval, int millis){
+		if (plies == moves.length){
+			moves = Arrays.copyOf(moves, 2 * plies);
+		}
+		if (eval != 0 && evals == null){
+			evals = new int[moves.length];
+		}
+		if (millis != 0 && times == null){
+			times = new int[moves.length];
+		}
+		if (evals != null){
+			evals = grow(evals);
+			evals[plies] = eval;
+		}
+		if (times != null){
+			times = grow(times);
+			times[plies] = millis;
+		}
+		moves[plies++] = move;
+	}
+
+	/**
+	 * Helper method: the given array, grown to the length of moves
+	 */
+	private int[] grow(int[] values){
+		return (values.length < moves.length) ? Arrays.copyOf(values, moves.length) : values;
+	}
+
+	/**
+	 * empties this record so that it can be reused
+	 */
+	protected void clear(){
+		plies = 0;
+		result = UNFINISHED;
+		metadata = "";
+		evals = null;
+		times = null;
+	}
+
+	/**
+	 * Appends records to a file, writing the header first if the file is new
+	 * or empty.  Writes are buffered until flush or close.
+	 */
+	protected static class Writer {
+		private final DataOutputStream out;
+
+		/**
+		 * @param file: the file to append to; a record cut short at its end is
+		 * removed first
+		 * @throws IOException: if the file cannot be opened, or has something
+		 * other than game records in it
+		 */
+		protected Writer(File file) throws IOException {
+			long length = file.length();
+			if (length > 0){
+				long end = completeLength(file);
+				if (end < length){
+					RandomAccessFile cut = new RandomAccessFile(file, "rw");
+					try {
+						cut.setLength(end);
+					} finally {
+						cut.close();
+					}
+				}
+			}
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+			if (length == 0){
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+			}
+		}
+
+		/**
+		 * appends a game
+		 * @param game: the game; at most 65535 plies and 65535 bytes of metadata
+		 */
+		protected void write(GameRecord game) throws IOException {
+			byte[] metadata = game.metadata.getBytes(StandardCharsets.UTF_8);
+			if (game.plies > MAX_PLIES || metadata.length > 0xFFFF){
+				throw new IOException("game too long to record");
+			}
+			int flags = (game.evals != null ? EVALS : 0) | (game.times != null ? TIMES : 0);
+			out.writeShort(game.plies);
+			out.writeByte(game.result);
+			out.writeByte(flags);
+			out.writeShort(metadata.length);
+			out.write(metadata);
+			for (int i = 0; i < game.plies; i++){
+				out.writeShort(game.moves[i]);
+			}
+			for (int i = 0; (flags & EVALS) != 0 && i < game.plies; i++){
+				out.writeInt(game.evals[i]);
+			}
+			for (int i = 0; (flags & TIMES) != 0 && i < game.plies; i++){
+				out.writeInt(game.times[i]);
+			}
+		}
+
+		/**
+		 * Helper method: the length of the given file up to the end of its last
+		 * whole record
+		 * @throws IOException: if the file holds no game records
+		 */
+		private static long completeLength(File file) throws IOException {
+			Reader reader = new Reader(file);
+			try {
+				GameRecord game = new GameRecord();
+				while (reader.next(game)){
+					// Only the position after the last whole record is wanted.
+				}
+				return reader.position;
+			} finally {
+				reader.close();
+			}
+		}
+
+		protected void flush() throws IOException {
+			out.flush();
+		}
+
+		protected void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads the records of a file in order through a memory-mapped window,
+	 * which is moved along the file as it is read, so files of any size can be
+	 * read without copying them onto the heap.
+	 */
+	protected static class Reader {
+		private final static int WINDOW = 1 << 30;
+
+		private final FileChannel channel;
+		private final RandomAccessFile file;
+		private final long size;
+		private MappedByteBuffer window;
+		private long windowStart;
+		private long position = HEADER;
+
+		/**
+		 * @param file: a file written by Writer
+		 * @throws IOException: if the file cannot be read or holds no records
+		 */
+		protected Reader(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			channel = this.file.getChannel();
+			size = channel.size();
+			if (size < HEADER || this.file.readInt() != MAGIC || this.file.readInt() != VERSION){
+				this.file.close();
+				throw new IOException(file + " is not a game record file");
+			}
+		}
+
+		/**
+		 * Helper method: maps the window so that it holds the given range
+		 * @return: false if the range runs past the end of the file
+		 */
+		private boolean ensure(long start, int length) throws IOException {
+			if (start + length > size){
+				return false;
+			}
+			if (window == null || start < windowStart || start + length > windowStart + window.capacity()){
+				windowStart = start;
+				window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+			}
+			return true;
+		}
+
+		/**
+		 * reads the next game
+		 * @param game: receives the game; its arrays are reused when they are
+		 * long enough
+		 * @return: false at the end of the file, or at a record that was cut short
+		 */
+		protected boolean next(GameRecord game) throws IOException {
+			if (!ensure(position, 6)){
+				return false;
+			}
+			int at = (int) (position - windowStart);
+			int plies = window.getShort(at) & 0xFFFF;
+			int result = window.get(at + 2);
+			int flags = window.get(at + 3);
+			int metadataLength = window.getShort(at + 4) & 0xFFFF;
+			int perPly = 2 + ((flags & EVALS) != 0 ? 4 : 0) + ((flags & TIMES) != 0 ? 4 : 0);
+			int length = 6 + metadataLength + plies * perPly;
+			if (!ensure(position, length)){
+				return false;
+			}
+			at = (int) (position - windowStart) + 6;
+			game.metadata = "";
+			if (metadataLength > 0){
+				byte[] metadata = new byte[metadataLength];
+				for (int i = 0; i < metadataLength; i++){
+					metadata[i] = window.get(at + i);
+				}
+				game.metadata = new String(metadata, StandardCharsets.UTF_8);
+			}
+			at += metadataLength;
+			game.plies = plies;
+			game.result = result;
+			if (game.moves.length < plies){
+				game.moves = new int[plies];
+			}
+			for (int i = 0; i < plies; i++, at += 2){
+				game.moves[i] = window.getShort(at) & 0xFFFF;
+			}
+			game.evals = read(game.evals, (flags & EVALS) != 0, plies, at);
+			at += ((flags & EVALS) != 0) ? 4 * plies : 0;
+			game.times = read(game.times, (flags & TIMES) != 0, plies, at);
+			position += length;
+			return true;
+		}
+
+		/**
+		 * Helper method: reads an optional array of ints from the window
+		 */
+		private int[] read(int[] values, boolean present, int plies, int at){
+			if (!present){
+				return null;
+			}
+			if (values == null || values.length < plies){
+				values = new int[Math.max(plies, 1)];
+			}
+			for (int i = 0; i < plies; i++){
+				values[i] = window.getInt(at + 4 * i);
+			}
+			return values;
+		}
+
+		protected void close() throws IOException {
+			window = null;
+			file.close();
+		}
+	}
+
+	/**
+	 * Helper method: the name of a result
+	 */
+	private static String resultName(int result){
+		switch (result){
+		case WHITE_WINS:
+			return "white";
+		case BLACK_WINS:
+			return "black";
+		case DRAW:
+			return "draw";
+		default:
+			return "unfinished";
+		}
+	}
+
+	public static void main(String args[]) throws IOException {
+		if (args.length >= 2 && args[0].equals("show")){
+			int limit = (args.length > 2) ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+			Reader reader = new Reader(new File(args[1]));
+			GameRecord game = new GameRecord();
+			for (int n = 0; n < limit && reader.next(game); n++){
+				StringBuilder line = new StringBuilder(resultName(game.result));
+				if (game.metadata.length() > 0){
+					line.append(" [").append(game.metadata).append(']');
+				}
+				for (int i = 0; i < game.plies; i++){
+					line.append(' ').append(PackedMove.unpack(game.moves[i]));
+				}
+				System.out.println(line);
+			}
+			reader.close();
+		} else if (args.length >= 2 && args[0].equals("replay")){
+			long start = System.nanoTime();
+			Reader reader = new Reader(new File(args[1]));
+			GameRecord game = new GameRecord();
+			Board board = new Board();
+			long games = 0;
+			long plies = 0;
+			long networks = 0;
+			while (reader.next(game)){
+				// Play the game forwards and take it back, so that one board
+				// serves every game.
+				int color = Cell.WHITE;
+				for (int i = 0; i < game.plies; i++){
+					board.action(game.moves[i], color);
+					color = 1 - color;
+				}
+				if (board.networkId(Cell.WHITE) || board.networkId(Cell.BLACK)){
+					networks++;
+				}
+				for (int i = game.plies - 1; i >= 0; i--){
+					color = 1 - color;
+					board.undo(game.moves[i], color);
+				}
+				games++;
+				plies += game.plies;
+			}
+			reader.close();
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("%d games, %d plies, %d ending in a network, in %.2f s: %.0f games/s, %.0f plies/s, %.1f MB/s",
+					games, plies, networks, seconds, games / seconds, plies / seconds,
+					new File(args[1]).length() / seconds / 1e6));
+		} else if (args.length >= 1 && args[0].equals("check")){
+			// Write two games, cut the second one short as a crash would, append
+			// a third and read the file back.
+			File file = File.createTempFile("records", ".bin");
+			file.deleteOnExit();
+			file.delete();
+			GameRecord[] games = new GameRecord[3];
+			for (int n = 0; n < games.length; n++){
+				games[n] = new GameRecord();
+				games[n].metadata = "game " + n;
+				games[n].result = n % 2;
+				for (int i = 0; i < 10 + n; i++){
+					games[n].add(PackedMove.add(9 + i), i, 0);
+				}
+			}
+			Writer writer = new Writer(file);
+			writer.write(games[0]);
+			writer.write(games[1]);
+			writer.close();
+			RandomAccessFile crashed = new RandomAccessFile(file, "rw");
+			crashed.setLength(file.length() - 5);
+			crashed.close();
+			writer = new Writer(file);
+			writer.write(games[2]);
+			writer.close();
+			Reader reader = new Reader(new File(file.getPath()));
+			GameRecord game = new GameRecord();
+			int read = 0;
+			int mismatches = 0;
+			for (int expected : new int[] {0, 2}){
+				if (!reader.next(game)){
+					break;
+				}
+				read++;
+				GameRecord g = games[expected];
+				if (!game.metadata.equals(g.metadata) || game.result != g.result || game.plies != g.plies
+						|| !Arrays.equals(Arrays.copyOf(game.moves, game.plies), Arrays.copyOf(g.moves, g.plies))
+						|| !Arrays.equals(Arrays.copyOf(game.evals, game.plies), Arrays.copyOf(g.evals, g.plies))){
+					mismatches++;
+				}
+			}
+			if (reader.next(game)){
+				read++;
+				mismatches++;
+			}
+			reader.close();
+			file.delete();
+			System.out.println("appending after a cut-off record: " + read + " games read back, should be 2; "
+					+ mismatches + " mismatches");
+		} else {
+			System.out.println("usage: java player.GameRecord show file [games]");
+			System.out.println("       java player.GameRecord replay file");
+			System.out.println("       java player.GameRecord check");
+		}
+	}
+}
@@ -0,0 +1,561 @@
+/* GameServer.java */
+
+package player;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  A local game server for NetworkClient and NetworkPlayer.  It speaks their
+ *  line protocol: the server greets a connection with its version ("v1.1"),
+ *  the client answers with a game number, and once a second client has asked
+ *  for the same number the first is told "white" and the second "black".
+ *  From then on each player sends its moves as Move.toString() lines
+ *  ("[add to 33]", "[step from 12 to 34]", "[quit]"), and the server checks
+ *  every move on its own Board before it passes the move to the opponent.
+ *
+ *  A player may resign with [quit] at any time.  It forfeits by an invalid
+ *  or unreadable move, a move out of turn, a move over the time limit, or by
+ *  disconnecting; its opponent is then sent a line that is not a move, which
+ *  NetworkPlayer prints before it exits.  A
+ *  game ends when a move completes a network (one that completes the
+ *  opponent's loses) or after the ply limit, and both connections are closed.
+ *
+ *  Connections are served by a few selector threads, each with the games of
+ *  its own connections, so no game needs a lock; the second player of a game
+ *  is handed over to the thread of the first if they differ.  Each connection
+ *  has a small input buffer and an output buffer that grows only while a
+ *  slow client is not reading.
+ *
+ *  Usage: java player.GameServer [-port N (default 12345)]
+ *             [-threads N (default: cores, at most 4)] [-time MS per move]
+ *             [-maxplies N] [-records file] [-stats seconds]
+ */
+final class GameServer {
+	protected final static String VERSION = "v1.1";
+	protected final static int PORT = 12345;
+	private final static int MAX_LINE = 128;
+	private final static byte[] CRLF = {'\r', '\n'};
+
+	/**
+	 * One client connection.  Only the worker that owns it touches it.
+	 */
+	private static class Connection {
+		final SocketChannel channel;
+		Worker worker;
+		SelectionKey key;
+		ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+		ByteBuffer out = ByteBuffer.allocate(64);
+		String room;
+		Connection partner;
+		Game game;
+		int color;
+		boolean closing;
+
+		Connection(SocketChannel channel){
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * A game between two connections, and the board it is checked on.
+	 */
+	private static class Game {
+		final Connection[] players = new Connection[2];
+		final Board board = new Board();
+		final GameRecord record = new GameRecord();
+		int turn = Cell.WHITE;
+		long turnStart;
+		boolean over;
+	}
+
+	private final int moveMillis;
+	private final int maxPlies;
+	private final GameRecord.Writer records;
+	private final HashMap<String, Connection> rooms = new HashMap<String, Connection>();
+	private final Worker[] workers;
+	private int nextWorker;
+	private final AtomicLong connections = new AtomicLong();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong finished = new AtomicLong();
+	private final AtomicLong forfeits = new AtomicLong();
+	private final AtomicLong moves = new AtomicLong();
+
+	private GameServer(int threads, int moveMillis, int maxPlies, GameRecord.Writer records) throws IOException {
+		this.moveMillis = moveMillis;
+		this.maxPlies = maxPlies;
+		this.records = records;
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++){
+			workers[i] = new Worker(i);
+		}
+	}
+
+	/**
+	 * reads a move in the Move.toString() format
+	 * @param line: the line, without its line terminator
+	 * @return: the move, or null if the line is not a move
+	 */
+	protected static Move parseMove(String line){
+		String[] fields = line.trim().split(" ");
+		if (fields.length == 1 && fields[0].equals("[quit]")){
+			return new Move();
+		} else if (fields.length == 3 && fields[0].equals("[add") && fields[1].equals("to")
+				&& fields[2].length() == 3 && fields[2].charAt(2) == ']'){
+			int x = digit(fields[2].charAt(0));
+			int y = digit(fields[2].charAt(1));
+			return (x < 0 || y < 0) ? null : new Move(x, y);
+		} else if (fields.length == 5 && fields[0].equals("[step") && fields[1].equals("from") && fields[3].equals("to")
+				&& fields[2].length() == 2 && fields[4].length() == 3 && fields[4].charAt(2) == ']'){
+			int x2 = digit(fields[2].charAt(0));
+			int y2 = digit(fields[2].charAt(1));
+			int x1 = digit(fields[4].charAt(0));
+			int y1 = digit(fields[4].charAt(1));
+			return (x1 < 0 || y1 < 0 || x2 < 0 || y2 < 0) ? null : new Move(x1, y1, x2, y2);
+		}
+		return null;
+	}
+
+	/**
+	 * Helper method: the value of a board coordinate, or -1
+	 */
+	private static int digit(char c){
+		return (c >= '0' && c <= '7') ? c - '0' : -1;
+	}
+
+	/**
+	 * A selector thread and the connections and games registered with it.
+	 */
+	private class Worker extends Thread {
+		final Selector selector;
+		final ConcurrentLinkedQueue<Connection> adopted = new ConcurrentLinkedQueue<Connection>();
+		final HashSet<Game> games = new HashSet<Game>();
+		ServerSocketChannel server;
+		long nextStats;
+		int statsMillis;
+
+		Worker(int index) throws IOException {
+			super("GameServer " + index);
+			selector = Selector.open();
+		}
+
+		/**
+		 * hands a connection to this worker from any thread
+		 */
+		void adopt(Connection c){
+			adopted.add(c);
+			selector.wakeup();
+		}
+
+		public void run(){
+			try {
+				while (true){
+					selector.select((moveMillis > 0 || statsMillis > 0) ? 100 : 0);
+					for (Connection c; (c = adopted.poll()) != null;){
+						register(c);
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (key.channel() == server){
+							accept();
+							continue;
+						}
+						Connection c = (Connection) key.attachment();
+						if (key.isValid() && key.isReadable()){
+							read(c);
+						}
+						if (key.isValid() && key.isWritable()){
+							flush(c);
+						}
+					}
+					long now = System.currentTimeMillis();
+					if (moveMillis > 0){
+						checkClocks(now);
+					}
+					if (statsMillis > 0 && now >= nextStats){
+						nextStats = now + statsMillis;
+						System.out.println(stats());
+					}
+				}
+			} catch (IOException e){
+				System.err.println(getName() + ": " + e);
+			}
+		}
+
+		/**
+		 * Helper method: accepts the pending connections and deals them out to
+		 * the workers in turn
+		 */
+		private void accept() throws IOException {
+			SocketChannel channel;
+			while ((channel = server.accept()) != null){
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				connections.incrementAndGet();
+				Connection c = new Connection(channel);
+				send(c, VERSION);
+				Worker w = workers[nextWorker];
+				nextWorker = (nextWorker + 1) % workers.length;
+				if (w == this){
+					register(c);
+				} else {
+					w.adopt(c);
+				}
+			}
+		}
+
+		/**
+		 * Helper method: registers a new or handed-over connection, and starts
+		 * its game if it was handed over to join one
+		 */
+		private void register(Connection c) throws IOException {
+			c.worker = this;
+			try {
+				c.key = c.channel.register(selector, SelectionKey.OP_READ, c);
+			} catch (IOException e){
+				close(c);
+				return;
+			}
+			if (c.partner != null){
+				Connection first = c.partner;
+				c.partner = null;
+				if (first.channel.isOpen()){
+					start(first, c);
+				} else {
+					join(c);
+				}
+			}
+			flush(c);
+		}
+
+		/**
+		 * Helper method: reads what a connection has sent and handles each
+		 * complete line
+		 */
+		private void read(Connection c) throws IOException {
+			int n;
+			try {
+				n = c.channel.read(c.in);
+			} catch (IOException e){
+				n = -1;
+			}
+			if (n < 0){
+				leave(c, "opponent disconnected");
+				return;
+			}
+			SelectionKey key = c.key;
+			for (int i = 0; i < c.in.position(); i++){
+				if (c.in.get(i) == '\n'){
+					int end = (i > 0 && c.in.get(i - 1) == '\r') ? i - 1 : i;
+					String line = new String(c.in.array(), 0, end, StandardCharsets.US_ASCII);
+					// Drop the line before handling it: handling it may hand
+					// the connection over to another worker.
+					c.in.flip();
+					c.in.position(i + 1);
+					c.in.compact();
+					line(c, line);
+					if (!key.isValid()){
+						return;
+					}
+					i = -1;
+				}
+			}
+			if (!c.in.hasRemaining()){
+				leave(c, "opponent sent a line that is too long");
+			}
+		}
+
+		/**
+		 * Helper method: handles one line from a connection
+		 */
+		private void line(Connection c, String line) throws IOException {
+			if (c.room == null){
+				c.room = line.trim();
+				join(c);
+			} else if (c.game != null && !c.game.over){
+				move(c, line);
+			}
+		}
+
+		/**
+		 * Helper method: puts a connection in its room, or pairs it with the
+		 * connection already waiting there
+		 */
+		private void join(Connection c) throws IOException {
+			Connection first;
+			synchronized (rooms){
+				first = rooms.remove(c.room);
+				if (first == null){
+					rooms.put(c.room, c);
+					return;
+				}
+			}
+			if (first.worker == this){
+				start(first, c);
+			} else {
+				// Move c to the thread of the game's first player.
+				c.key.cancel();
+				c.partner = first;
+				first.worker.adopt(c);
+			}
+		}
+
+		/**
+		 * Helper method: starts a game; the first to join plays White
+		 */
+		private void start(Connection white, Connection black) throws IOException {
+			Game game = new Game();
+			game.players[Cell.WHITE] = white;
+			game.players[Cell.BLACK] = black;
+			game.record.metadata = "room=" + white.room;
+			game.turnStart = System.currentTimeMillis();
+			white.game = game;
+			white.color = Cell.WHITE;
+			black.game = game;
+			black.color = Cell.BLACK;
+			games.add(game);
+			started.incrementAndGet();
+			send(white, "white");
+			send(black, "black");
+		}
+
+		/**
+		 * Helper method: checks a move and passes it on to the opponent
+		 */
+		private void move(Connection c, String line) throws IOException {
+			Game game = c.game;
+			Move m = parseMove(line);
+			if (m != null && m.moveKind == Move.QUIT){
+				// A player may resign at any time.
+				send(game.players[1 - c.color], m.toString());
+				end(game, 1 - c.color);
+			} else if (c.color != game.turn){
+				forfeit(c, "opponent moved out of turn");
+			} else if (m == null){
+				forfeit(c, "opponent sent something that is not a move: " + line);
+			} else if (!game.board.isValidMove(m, c.color)){
+				forfeit(c, "opponent made an invalid move: " + m);
+			} else {
+				long now = System.currentTimeMillis();
+				moves.incrementAndGet();
+				game.board.action(m, c.color);
+				game.record.add(PackedMove.pack(m), 0, (int) Math.max(now - game.turnStart, 1));
+				send(game.players[1 - c.color], m.toString());
+				if (game.board.networkId(1 - c.color)){
+					end(game, 1 - c.color);
+				} else if (game.board.networkId(c.color)){
+					end(game, c.color);
+				} else if (maxPlies > 0 && game.record.plies >= maxPlies){
+					end(game, GameRecord.DRAW);
+				} else {
+					game.turn = 1 - c.color;
+					game.turnStart = now;
+				}
+			}
+		}
+
+		/**
+		 * Helper method: ends a game that a player has lost by breaking the
+		 * rules, and tells both players why
+		 */
+		private void forfeit(Connection loser, String reason) throws IOException {
+			forfeits.incrementAndGet();
+			send(loser.game.players[1 - loser.color], reason);
+			send(loser, "forfeit: " + reason.replaceFirst("^opponent ", "you "));
+			end(loser.game, 1 - loser.color);
+		}
+
+		/**
+		 * Helper method: ends a game, records it, and closes both connections
+		 * once what they have been sent is written
+		 */
+		private void end(Game game, int result) throws IOException {
+			game.over = true;
+			game.record.result = result;
+			games.remove(game);
+			finished.incrementAndGet();
+			if (records != null){
+				synchronized (records){
+					records.write(game.record);
+				}
+			}
+			for (Connection c : game.players){
+				c.closing = true;
+				flush(c);
+			}
+		}
+
+		/**
+		 * Helper method: a connection has gone or broken the protocol; its
+		 * opponent, if any, wins
+		 */
+		private void leave(Connection c, String reason) throws IOException {
+			if (c.game != null && !c.game.over){
+				forfeit(c, reason);
+			} else if (c.game == null && c.room != null){
+				synchronized (rooms){
+					if (rooms.get(c.room) == c){
+						rooms.remove(c.room);
+					}
+				}
+			}
+			close(c);
+		}
+
+		/**
+		 * Helper method: forfeits the games whose player to move is over the
+		 * time limit
+		 */
+		private void checkClocks(long now) throws IOException {
+			ArrayList<Game> late = new ArrayList<Game>();
+			for (Game game : games){
+				if (now - game.turnStart > moveMillis){
+					late.add(game);
+				}
+			}
+			for (Game game : late){
+				forfeit(game.players[game.turn], "opponent ran out of time");
+			}
+		}
+	}
+
+	/**
+	 * Helper method: queues a line for a connection and tries to write it at
+	 * once
+	 */
+	private static void send(Connection c, String line) throws IOException {
+		byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+		if (c.out.remaining() < bytes.length + CRLF.length){
+			ByteBuffer bigger = ByteBuffer.allocate(2 * (c.out.position() + bytes.length + CRLF.length));
+			c.out.flip();
+			bigger.put(c.out);
+			c.out = bigger;
+		}
+		c.out.put(bytes).put(CRLF);
+		if (c.key != null && c.key.isValid()){
+			flush(c);
+		}
+	}
+
+	/**
+	 * Helper method: writes what the channel will take, and asks the selector
+	 * to say when it will take more; closes a finished connection once its
+	 * output is written
+	 */
+	private static void flush(Connection c) throws IOException {
+		if (!c.channel.isOpen()){
+			return;
+		}
+		c.out.flip();
+		try {
+			c.channel.write(c.out);
+		} catch (IOException e){
+			c.out.clear();
+			close(c);
+			return;
+		}
+		c.out.compact();
+		if (c.out.position() > 0){
+			c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else if (c.closing){
+			close(c);
+		} else {
+			c.key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Helper method: closes a connection
+	 */
+	private static void close(Connection c){
+		if (c.key != null){
+			c.key.cancel();
+		}
+		try {
+			c.channel.close();
+		} catch (IOException e){
+			// Nothing more can be done with it.
+		}
+	}
+
+	/**
+	 * @return: the counts so far
+	 */
+	private String stats(){
+		int waiting;
+		synchronized (rooms){
+			waiting = rooms.size();
+		}
+		long done = finished.get();
+		return connections.get() + " connections, " + waiting + " waiting, " + (started.get() - done)
+				+ " games in progress, " + done + " finished (" + forfeits.get() + " forfeited), " + moves.get() + " moves";
+	}
+
+	public static void main(String args[]) throws IOException {
+		int port = PORT;
+		int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+		int moveMillis = 0;
+		int maxPlies = 0;
+		String recordFile = null;
+		int statsSeconds = 0;
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-port")){
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")){
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")){
+				moveMillis = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-maxplies")){
+				maxPlies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-records")){
+				recordFile = args[++i];
+			} else if (args[i].equals("-stats")){
+				statsSeconds = Integer.parseInt(args[++i]);
+			} else {
+				System.out.println("usage: java player.GameServer [-port N] [-threads N] [-time MS] [-maxplies N]"
+						+ " [-records file] [-stats seconds]");
+				return;
+			}
+		}
+		GameRecord.Writer records = (recordFile != null) ? new GameRecord.Writer(new File(recordFile)) : null;
+		final GameServer server = new GameServer(threads, moveMillis, maxPlies, records);
+		Worker acceptor = server.workers[0];
+		acceptor.server = ServerSocketChannel.open();
+		acceptor.server.bind(new InetSocketAddress(port), 1024);
+		acceptor.server.configureBlocking(false);
+		acceptor.server.register(acceptor.selector, SelectionKey.OP_ACCEPT);
+		acceptor.statsMillis = 1000 * statsSeconds;
+		if (records != null){
+			final GameRecord.Writer writer = records;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run(){
+					synchronized (writer){
+						try {
+							writer.close();
+						} catch (IOException e){
+							System.err.println("GameServer: " + e);
+						}
+					}
+				}
+			});
+		}
+		System.out.println("GameServer " + VERSION + " listening on port " + port + " with " + threads + " threads");
+		for (Worker w : server.workers){
+			w.start();
+		}
+	}
+}
@@ -1,9 +1,11 @@
 /* MachinePlayer.java */
 
 package player;
-import list.DList;
-import list.DListNode;
-import list.InvalidNodeException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  *  An implementation of an automatic Network player.  Keeps track of moves
@@ -13,6 +15,28 @@ public class MachinePlayer extends Player {
 	private Board current;
 	private int color; 
 	private int searchDepth;
+	private long timeLimit;
+	private TranspositionTable table;
+	private Searcher[] searchers;
+	private ExecutorService helpers;
+	private ExecutorService ponderThread;
+	private Searcher ponderer;
+	private Future<?> pondering;
+	private int predicted;
+	private boolean ponderHit;
+	private OpeningBook book;
+	private ProofSearch solver;
+	private int quiescenceDepth;
+	private final static int SOLVER_NODES = 50000;
+	private final static int SOLVER_PLY = 5;
+
+	/**
+	 * The default opening book, opened once, and only when a player that uses
+	 * it is created.
+	 */
+	private static class DefaultBook {
+		final static OpeningBook BOOK = OpeningBook.openDefault();
+	}
 	public final static boolean MACHINE = true;
 	public final static boolean OPPONENT = false;
 
@@ -42,7 +66,9 @@ public class MachinePlayer extends Player {
 
 	/**
 	 *  Creates a machine player with the given color and search depth.  Color is
-	 *  either 0 (black) or 1 (white).  (White has the first move.)
+	 *  either 0 (black) or 1 (white).  (White has the first move.)  The player
+	 *  only searches, to the full depth every move: it has no transposition
+	 *  table, opening book, solver or quiescence search unless they are set.
 	 * @param color: the given color for this MachinePlayer; either 0 or 1
 	 * @param searchDepth: the max depth that the minimax method will search into 
 	 */
@@ -50,20 +76,333 @@ public class MachinePlayer extends Player {
 		this.color = color;
 		this.searchDepth = searchDepth;
 		current = new Board();
+		searchers = new Searcher[] {new Searcher(color)};
+	}
+
+	/**
+	 *  Creates a machine player that searches by iterative deepening: depth 1, 2,
+	 *  3, ... up to searchDepth, until the time limit for a move runs out.  The move
+	 *  from the deepest completed iteration is played.  The player has a 2^20-slot
+	 *  transposition table, the default opening book, the proof-number solver
+	 *  and the quiescence search.
+	 * @param color: the given color for this MachinePlayer; either 0 or 1
+	 * @param searchDepth: the max depth that the minimax method will search into
+	 * @param timeLimit: milliseconds allowed per move; 0 searches to searchDepth
+	 * with no time limit
+	 */
+	public MachinePlayer(int color, int searchDepth, long timeLimit) {
+		this(color, searchDepth, timeLimit, new TranspositionTable(20, TranspositionTable.DEPTH_PREFERRED));
+	}
+
+	/**
+	 *  Creates a machine player that searches by iterative deepening with the
+	 *  given transposition table, so that a caller with a table of its own does
+	 *  not pay for the default one.  Like the timed player, it has the default
+	 *  opening book, the solver and the quiescence search.
+	 * @param color: the given color for this MachinePlayer; either 0 or 1
+	 * @param searchDepth: the max depth that the minimax method will search into
+	 * @param timeLimit: milliseconds allowed per move; 0 searches to searchDepth
+	 * with no time limit
+	 * @param table: the table that minimax caches its results in, or null to
+	 * search without one
+	 */
+	public MachinePlayer(int color, int searchDepth, long timeLimit, TranspositionTable table) {
+		this(color, searchDepth);
+		this.timeLimit = timeLimit;
+		this.table = table;
+		book = DefaultBook.BOOK;
+		solver = new ProofSearch(SOLVER_NODES, SOLVER_PLY);
+		quiescenceDepth = Searcher.QUIESCENCE_DEPTH;
+	}
+
+	/**
+	 *  Stops pondering and shuts down the helper and ponder threads, so that a
+	 *  driver creating players for many games does not keep their threads.  The
+	 *  player may still be used afterwards, searching on the caller's thread.
+	 */
+	public void close() {
+		setPondering(false);
+		setThreads(1);
+	}
+
+	/**
+	 *  Sets the number of threads that search each move.  Every thread searches
+	 *  the whole tree on its own copy of the board; they share the
+	 *  transposition table, and the first thread's move is played.
+	 *  @param threads: the number of search threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		if (helpers != null){
+			helpers.shutdown();
+			helpers = null;
+		}
+		searchers = new Searcher[Math.max(1, threads)];
+		for (int i = 0; i < searchers.length; i++){
+			searchers[i] = new Searcher(color);
+		}
+		if (searchers.length > 1){
+			helpers = Executors.newFixedThreadPool(searchers.length - 1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "MachinePlayer helper");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 *  Turns pondering on or off.  When pondering, the player guesses the
+	 *  opponent's reply after each of its moves (the best reply stored in the
+	 *  transposition table) and searches the position after that reply on a
+	 *  background thread until opponentMove is called.  If the opponent plays
+	 *  the guessed move, the next chooseMove continues from the depth that was
+	 *  reached, or plays the pondered move if the full depth was searched;
+	 *  otherwise the background search is stopped and only its table entries
+	 *  remain.  Pondering needs a transposition table.
+	 *  @param ponder: true to ponder on the opponent's time
+	 */
+	public void setPondering(boolean ponder) {
+		stopPondering();
+		ponderHit = false;
+		if (ponder && ponderThread == null){
+			ponderer = new Searcher(color);
+			ponderThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "MachinePlayer ponder");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		} else if (!ponder && ponderThread != null){
+			ponderThread.shutdown();
+			ponderThread = null;
+			ponderer = null;
+		}
+	}
+
+	/**
+	 *  Helper method: starts searching the position after the opponent's most
+	 *  likely reply to the move just played, if pondering is on and the table
+	 *  knows a reply
+	 */
+	private void startPondering(){
+		if (ponderThread == null || table == null
+				|| current.networkId(color) || current.networkId(oppositeColor())){
+			return;
+		}
+		int reply = TranspositionTable.move(table.probe(current.hash(oppositeColor())));
+		Move m = PackedMove.unpack(reply);
+		if (m == null || !current.isValidMove(m, oppositeColor())){
+			return;
+		}
+		Board next = new Board(current);
+		next.action(reply, oppositeColor());
+		if (next.networkId(oppositeColor())){
+			return;
+		}
+		predicted = reply;
+		ponderer.quiescenceDepth = quiescenceDepth;
+		ponderer.setUp(next, table, 1, searchDepth, 0);
+		pondering = ponderThread.submit(ponderer);
+	}
+
+	/**
+	 *  Helper method: stops the background search, if one is running, and waits
+	 *  for it to finish
+	 */
+	private void stopPondering(){
+		if (pondering == null){
+			return;
+		}
+		ponderer.stop();
+		join(pondering);
+		pondering = null;
+		if (SearchStats.ENABLED){
+			SearchStats.INSTANCE.record(ponderer, false);
+		}
+	}
+
+	/**
+	 *  Helper method: waits for a search submitted to another thread
+	 */
+	private static void join(Future<?> running){
+		try {
+			running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 *  Replaces the opening book.  The timed players share the book in book.bin
+	 *  next to this class, or the file named by the player.book system
+	 *  property; players of a fixed depth have none.  chooseMove plays the
+	 *  heaviest book move of a position without searching.
+	 *  @param book: the new book, or null to always search
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+
+	/**
+	 *  Sets the budget of the proof-number solver.  Before searching, chooseMove
+	 *  asks the solver whether this player can force a network whenever either
+	 *  color is close to one, and plays the first move of a proof straight away.
+	 *  The timed players start with 50000 nodes and 5 plies, and a timed solve
+	 *  stops after half the time limit; players of a fixed depth have no solver.
+	 *  @param maxNodes: the most nodes the solver may create per move; 0 turns
+	 *  the solver off
+	 *  @param maxPly: the longest forced line, in moves by both colors, that
+	 *  the solver looks for
+	 */
+	public void setSolver(int maxNodes, int maxPly) {
+		solver = (maxNodes > 0) ? new ProofSearch(maxNodes, maxPly) : null;
+	}
+
+	/**
+	 *  Sets how far past the search depth minimax follows network threats.  At
+	 *  the horizon a side that can complete a network wins, and a side that
+	 *  faces one only tries the moves that block it.  The timed players start
+	 *  at Searcher.QUIESCENCE_DEPTH, and players of a fixed depth at 0.
+	 *  @param depth: the most plies searched past the horizon; 0 evaluates the
+	 *  horizon as it is
+	 */
+	public void setQuiescenceDepth(int depth) {
+		quiescenceDepth = Math.max(0, depth);
+	}
+
+	/**
+	 *  Replaces the transposition table that minimax caches its results in.
+	 *  @param table: the new table, or null to search without one
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		stopPondering();
+		ponderHit = false;
+		this.table = table;
+	}
+
+	/**
+	 *  Returns the transposition table, e.g. to read its hit rate.
+	 *  @return: the table, or null if there is none
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
 	}
 
 	/**
 	 *  Returns a new move by "this" player.  Internally records the move (updates
-	 *  the internal game board) as a move by "this" player.
+	 *  the internal game board) as a move by "this" player.  The opening book and
+	 *  the proof-number solver are consulted before searching.
 	 */
 	public Move chooseMove() {
-		int alpha = Integer.MIN_VALUE;
-		int beta = Integer.MAX_VALUE;
-		Best myBest = minimax(MACHINE, alpha, beta, searchDepth);
-		Move bestMove = myBest.getMove();
+		ChooseMoveEvent event = null;
+		if (SearchStats.ENABLED){
+			event = new ChooseMoveEvent();
+			event.begin();
+		}
+		stopPondering();
+		long start = System.currentTimeMillis();
+		boolean hit = ponderHit;
+		ponderHit = false;
+		Move bestMove = null;
+		String source = "book";
+		if (book != null){
+			bestMove = book.probe(current, color, null);
+		}
+		if (solver != null){
+			// A timed solve leaves the search at least half of the move's time.
+			solver.timeLimit = (timeLimit > 0) ? Math.max(1, timeLimit / 2) : 0;
+		}
+		if (bestMove == null && solver != null
+				&& (current.nearNetwork(color) || current.nearNetwork(oppositeColor()))
+				&& solver.solve(current, color) == ProofSearch.PROVEN){
+			bestMove = PackedMove.unpack(solver.move);
+			source = "solver";
+		}
+		if (bestMove == null && hit && ponderer.completedDepth >= searchDepth){
+			bestMove = ponderer.result;
+			source = "ponder";
+		} else if (bestMove == null){
+			// The pondered depth is searched again, which is cheap with its
+			// results in the table, so that there is a completed iteration to
+			// fall back on if the next one runs out of time.
+			bestMove = search(hit ? Math.max(1, ponderer.completedDepth) : 1,
+					(timeLimit > 0) ? Math.max(1, timeLimit - (System.currentTimeMillis() - start)) : 0);
+			source = "search";
+		}
 		current.action(bestMove, color);
+		if (SearchStats.ENABLED){
+			SearchStats.INSTANCE.recordMove();
+			commit(event, bestMove, source);
+		}
+		startPondering();
 		return bestMove;
-	} 
+	}
+
+	/**
+	 *  Helper method: fills in and commits the JFR event of a chosen move
+	 *  @param event: the event, begun when chooseMove was called
+	 *  @param move: the move chosen
+	 *  @param source: how it was chosen: "book", "solver", "ponder" or "search"
+	 */
+	private void commit(ChooseMoveEvent event, Move move, String source) {
+		event.end();
+		if (!event.shouldCommit()){
+			return;
+		}
+		event.move = String.valueOf(move);
+		event.source = source;
+		if (source.equals("search")){
+			Searcher s = searchers[0];
+			event.depth = s.completedDepth;
+			event.selectiveDepth = s.selectiveDepth;
+			event.nodes = s.nodes;
+			event.quiescenceNodes = s.quiescenceNodes;
+			event.evaluations = s.evaluations;
+			event.networkChecks = s.networkChecks;
+			event.cutoffs = s.cutoffs;
+			event.firstMoveCutoffs = s.firstMoveCutoffs;
+		} else if (source.equals("ponder")){
+			event.depth = ponderer.completedDepth;
+		}
+		event.commit();
+	}
+
+	/**
+	 *  Helper method: searches the current position with all search threads
+	 *  @param resumeDepth: the first iteration of a timed search; depths below it
+	 *  were already searched while pondering
+	 *  @param limit: milliseconds left for the search; 0 for no limit
+	 *  @return Move: the move of the first search thread
+	 */
+	private Move search(int resumeDepth, long limit) {
+		Future<?>[] running = new Future<?>[searchers.length];
+		for (int i = 1; i < searchers.length; i++){
+			// Helpers alternate between odd and even first depths so that they
+			// do not all search the same iteration at the same time.
+			searchers[i].quiescenceDepth = quiescenceDepth;
+			searchers[i].setUp(current, table, 1 + (i & 1), searchDepth, limit);
+			running[i] = helpers.submit(searchers[i]);
+		}
+		searchers[0].quiescenceDepth = quiescenceDepth;
+		searchers[0].setUp(current, table, (limit > 0) ? resumeDepth : searchDepth, searchDepth, limit);
+		Move bestMove = searchers[0].search();
+		for (int i = 1; i < searchers.length; i++){
+			searchers[i].stop();
+		}
+		for (int i = 1; i < searchers.length; i++){
+			join(running[i]);
+		}
+		if (SearchStats.ENABLED){
+			for (int i = 0; i < searchers.length; i++){
+				SearchStats.INSTANCE.record(searchers[i], i == 0);
+			}
+		}
+		return bestMove;
+	}
 
 	/** 
 	 * If the Move m is legal, records the move as a move by the opponent
@@ -74,6 +413,9 @@ public class MachinePlayer extends Player {
 	 */
 	public boolean opponentMove(Move m) {
 		if (current.isValidMove(m, oppositeColor())){
+			boolean hit = pondering != null && PackedMove.pack(m) == predicted;
+			stopPondering();
+			ponderHit = hit;
 			current.action(m, oppositeColor());
 			return true;
 		}
@@ -92,6 +434,8 @@ public class MachinePlayer extends Player {
 	 */
 	public boolean forceMove(Move m) {
 		if (current.isValidMove(m, color)){
+			stopPondering();
+			ponderHit = false;
 			current.action(m, color);
 			return true;
 		}
@@ -100,72 +444,6 @@ public class MachinePlayer extends Player {
 		}
 	}
 
-	/**
-	 * a helper function that finds the best move for MachinePlayer to take
-	 * @param side: indicates whose turn it is: either MachinePlayer.MACHINE 
-	 * or MachinePlayer.OPPONENT
-	 * @param alpha: a score that MACHINE knows with certainty it can achieve
-	 * @param beta: a score no more than what the OPPONENT can achieve
-	 * @param searchDepth: the depth that this minimax will search into
-	 * @return Best: a Best object that contains the best move for this MachinePlayer
-	 * to take
-	 */
-	private Best minimax(boolean side, int alpha, int beta, int searchDepth) { 
-		Best myBest = new Best(); 
-		Best reply; 
-		
-		if (searchDepth == 0){
-			myBest.setScore(current.evaluation(this.color, this.searchDepth-searchDepth));
-			return myBest;
-		}
-		if (current.networkId(this.color) || current.networkId(oppositeColor())){
-			myBest.setScore(current.evaluation(this.color, this.searchDepth-searchDepth));
-			return myBest;
-		}
-		if (side == MachinePlayer.MACHINE) {
-			myBest.setScore(alpha);
-		} else {
-			myBest.setScore(beta);
-		}
-
-		try{ 
-			int colorUsed = 0;
-			if (side == MachinePlayer.MACHINE){
-				colorUsed = this.color;
-			}
-			else{
-				colorUsed = oppositeColor();
-			}
-	  
-			DList validMoves = current.listValidMove(colorUsed);
-			DListNode curr = (DListNode) validMoves.front();
-			myBest.setMove((Move) validMoves.front().item());
-	  
-			for (int i =0 ; i < validMoves.length() ; i++) {		  
-				current.action( ((Move) curr.item()) , colorUsed);
-				reply = minimax(!side, alpha, beta, searchDepth-1);
-				current.undo(((Move) curr.item()), colorUsed);	      
-				if (side == MACHINE && reply.getScore() > myBest.getScore()) {
-					myBest.setMove((Move) curr.item());
-					myBest.setScore(reply.getScore());
-					alpha = reply.getScore();
-				} else if (side == OPPONENT && reply.getScore() < myBest.getScore()) {
-					myBest.setMove((Move) curr.item());
-					myBest.setScore(reply.getScore());
-					beta = reply.getScore();
-				}
-				if (alpha >= beta) { 
-					return myBest; 
-				}
-				curr = (DListNode) curr.next();
-			}
-		}
-		catch (InvalidNodeException e){
-			System.out.println("invalid node");
-		}
-		return myBest;
-	}
-
 public static void main(String args[]){
 	final int BLACK = 0; 
 	final int WHITE = 1; 
@@ -221,8 +499,101 @@ public static void main(String args[]){
 	System.out.println("-----------------------------------------");
 	p2.current.printBoard();
 	
+	System.out.println("Testing iterative deepening with a 1 second limit");
+	MachinePlayer p3 = new MachinePlayer(BLACK, 10, 1000);
+	p3.forceMove(new Move(3, 0));
+	p3.opponentMove(new Move(0, 3));
+	p3.forceMove(new Move(4, 2));
+	p3.opponentMove(new Move(2, 4));
+	long start = System.currentTimeMillis();
+	Move timedMove = p3.chooseMove();
+	System.out.println(timedMove + " after " + (System.currentTimeMillis() - start)
+			+ " ms, stopped at depth " + p3.searchers[0].rootDepth);
 
-	
-	
+	System.out.println("Transposition table on a step-phase position");
+	Move[] game = {new Move(4, 5), new Move(1, 2), new Move(0, 5), new Move(2, 2), new Move(1, 6),
+			new Move(2, 7), new Move(6, 4), new Move(5, 4), new Move(3, 4), new Move(6, 1), new Move(7, 5),
+			new Move(4, 2), new Move(0, 1), new Move(6, 0), new Move(2, 1), new Move(3, 0), new Move(5, 1),
+			new Move(1, 7), new Move(0, 2), new Move(6, 7)};
+	for (int depth = 2; depth <= 4; depth++){
+		for (int withTable = 0; withTable <= 1; withTable++){
+			// A player of a fixed depth has no solver, which would play the
+			// position's win in one without searching.
+			MachinePlayer p4 = new MachinePlayer(WHITE, depth);
+			if (withTable == 1){
+				p4.setTranspositionTable(new TranspositionTable(20, TranspositionTable.DEPTH_PREFERRED));
+			}
+			for (int i = 0; i < game.length; i += 2){
+				p4.forceMove(game[i]);
+				p4.opponentMove(game[i + 1]);
+			}
+			start = System.currentTimeMillis();
+			Move m = p4.chooseMove();
+			System.out.println("depth " + depth + (withTable == 1 ? " with" : " without") + " table: " + m
+					+ " " + p4.searchers[0].nodes + " nodes, " + (System.currentTimeMillis() - start) + " ms"
+					+ (withTable == 1 ? ", hit rate " + p4.table.hitRate() : ""));
+		}
+	}
+
+	MachinePlayer p7 = new MachinePlayer(WHITE, 1);
+	p7.setSolver(50000, 5);
+	for (int i = 0; i < game.length; i += 2){
+		p7.forceMove(game[i]);
+		p7.opponentMove(game[i + 1]);
+	}
+	start = System.currentTimeMillis();
+	Move proven = p7.chooseMove();
+	System.out.println("solver on the same position: " + proven + " proven in " + p7.solver.nodes + " nodes, "
+			+ (System.currentTimeMillis() - start) + " ms, network " + p7.current.networkId(WHITE));
+
+	System.out.println("Lazy SMP: time to depth 4 on another step-phase position");
+	Move[] game2 = {new Move(1, 4), new Move(1, 0), new Move(0, 6), new Move(2, 6), new Move(5, 3),
+			new Move(6, 4), new Move(6, 1), new Move(2, 4), new Move(2, 2), new Move(4, 0), new Move(2, 1),
+			new Move(6, 7), new Move(5, 1), new Move(1, 1), new Move(6, 6), new Move(4, 7), new Move(5, 5),
+			new Move(5, 0), new Move(7, 4), new Move(6, 3)};
+	for (int threads = 1; threads <= 16; threads *= 2){
+		MachinePlayer p5 = new MachinePlayer(WHITE, 4);
+		p5.setTranspositionTable(new TranspositionTable(20, TranspositionTable.DEPTH_PREFERRED));
+		p5.setThreads(threads);
+		for (int i = 0; i < game2.length; i += 2){
+			p5.forceMove(game2[i]);
+			p5.opponentMove(game2[i + 1]);
+		}
+		start = System.currentTimeMillis();
+		Move m = p5.chooseMove();
+		System.out.println(threads + " threads: " + m + " in " + (System.currentTimeMillis() - start) + " ms");
+		p5.setThreads(1);
+	}
+
+	System.out.println("Pondering: the reply after a ponder hit, with 1 second per move");
+	for (int ponder = 0; ponder <= 1; ponder++){
+		MachinePlayer p6 = new MachinePlayer(WHITE, 10, 1000);
+		p6.setPondering(ponder == 1);
+		for (int i = 0; i < 6; i += 2){
+			p6.forceMove(game2[i]);
+			p6.opponentMove(game2[i + 1]);
+		}
+		Move first = p6.chooseMove();
+		// The opponent plays the reply that the player expects, after thinking
+		// for as long as the player did.
+		Move reply = PackedMove.unpack(TranspositionTable.move(p6.table.probe(p6.current.hash(BLACK))));
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+			return;
+		}
+		p6.opponentMove(reply);
+		boolean hit = p6.ponderHit;
+		int pondered = (p6.ponderer == null) ? 0 : p6.ponderer.completedDepth;
+		start = System.currentTimeMillis();
+		Move second = p6.chooseMove();
+		System.out.println((ponder == 1 ? "with" : "without") + " pondering: " + first + ", " + reply + ", " + second
+				+ " in " + (System.currentTimeMillis() - start) + " ms" + (hit ? ", ponder hit at depth " + pondered : "")
+				+ ", searched to depth " + p6.searchers[0].completedDepth);
+		p6.setPondering(false);
+	}
+	if (SearchStats.ENABLED){
+		System.out.println("Search statistics: " + SearchStats.INSTANCE);
+	}
 }
 }
\ No newline at end of file
@@ -0,0 +1,351 @@
+/* OpeningBook.java */
+
+package player;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ *  A read-only book of opening moves, memory-mapped from a file so that
+ *  opening it costs no parsing and no heap.  A position is looked up by its
+ *  canonical hash, the smallest Zobrist hash of its four reflections (see
+ *  Board.SYMMETRIES), so one entry covers all four.  Moves are stored in the
+ *  frame of the canonical reflection and reflected back on lookup.
+ *
+ *  The file is big-endian: the magic number, the version and the number of
+ *  entries as ints, then the entries sorted by hash.  Each entry is the hash
+ *  (a long) and an int holding the packed move in the high 16 bits and its
+ *  weight in the low 16 bits; the candidates of one position are adjacent and
+ *  sorted by weight, heaviest first.
+ *
+ *  Usage: java player.OpeningBook build file [plies] [depth]
+ *             searches every position within the given number of plies of
+ *             the empty board that either color can reach while following
+ *             the book, and writes the book
+ *         java player.OpeningBook show file
+ *             prints the book
+ */
+public class OpeningBook {
+	private final static int MAGIC = 0x4E57424B; // "NWBK"
+	private final static int VERSION = 1;
+	private final static int HEADER = 12;
+	private final static int ENTRY = 12;
+	private final static int MAX_WEIGHT = 0xFFFF;
+
+	private final ByteBuffer buffer;
+	private final int entries;
+
+	/**
+	 * Wraps a book that is already in memory.
+	 * @param buffer: the contents of a book file
+	 * @throws IOException: if the contents are not a book
+	 */
+	protected OpeningBook(ByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+			throw new IOException("not an opening book");
+		}
+		entries = buffer.getInt(8);
+		if (entries < 0 || (long) HEADER + (long) entries * ENTRY > buffer.capacity()){
+			throw new IOException("truncated opening book");
+		}
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Maps the given book file read-only.
+	 * @param file: a file written by the book builder
+	 * @throws IOException: if the file cannot be read or is not a book
+	 */
+	public static OpeningBook open(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens the book named by the player.book system property, or else the
+	 * file book.bin next to this class.  A book.bin inside a jar cannot be
+	 * mapped, so it is read onto the heap instead.
+	 * @return: the book, or null if there is none or it cannot be read
+	 */
+	protected static OpeningBook openDefault(){
+		try {
+			String name = System.getProperty("player.book");
+			if (name != null){
+				File file = new File(name);
+				return file.isFile() ? open(file) : null;
+			}
+			URL url = OpeningBook.class.getResource("book.bin");
+			if (url == null){
+				return null;
+			} else if (url.getProtocol().equals("file")){
+				return open(new File(url.toURI()));
+			}
+			InputStream in = url.openStream();
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] chunk = new byte[1 << 16];
+				for (int n; (n = in.read(chunk)) > 0; ){
+					bytes.write(chunk, 0, n);
+				}
+				return new OpeningBook(ByteBuffer.wrap(bytes.toByteArray()));
+			} finally {
+				in.close();
+			}
+		} catch (Exception e){
+			return null;
+		}
+	}
+
+	/**
+	 * @return: the number of moves in the book
+	 */
+	public int size(){
+		return entries;
+	}
+
+	/**
+	 * Helper method: the symmetry that gives the smallest hash of the given
+	 * position, whose hash is the key of the position in the book
+	 */
+	private static int canonicalSymmetry(Board board, int color){
+		int best = 0;
+		long key = board.hash(color, 0);
+		for (int s = 1; s < Board.SYMMETRIES.length; s++){
+			long h = board.hash(color, Board.SYMMETRIES[s]);
+			if (h < key){
+				key = h;
+				best = s;
+			}
+		}
+		return Board.SYMMETRIES[best];
+	}
+
+	/**
+	 * Helper method: the index of the first entry whose key is at least the
+	 * given key
+	 */
+	private int lowerBound(long key){
+		int low = 0;
+		int high = entries;
+		while (low < high){
+			int mid = (low + high) >>> 1;
+			if (buffer.getLong(HEADER + mid * ENTRY) < key){
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * looks up the candidate moves of the given position
+	 * @param board: the position
+	 * @param color: the color to move
+	 * @param moves: receives the packed moves, reflected into the board's frame
+	 * @param weights: receives their weights
+	 * @return: the number of candidates, heaviest first; at most moves.length
+	 */
+	protected int candidates(Board board, int color, int[] moves, int[] weights){
+		int symmetry = canonicalSymmetry(board, color);
+		long key = board.hash(color, symmetry);
+		int count = 0;
+		for (int i = lowerBound(key); i < entries && count < moves.length; i++){
+			if (buffer.getLong(HEADER + i * ENTRY) != key){
+				break;
+			}
+			int value = buffer.getInt(HEADER + i * ENTRY + 8);
+			moves[count] = PackedMove.reflect(value >>> 16, symmetry);
+			weights[count] = value & MAX_WEIGHT;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * chooses a book move for the given position
+	 * @param board: the position
+	 * @param color: the color to move
+	 * @param random: picks a candidate with probability proportional to its
+	 * weight; null always picks the heaviest
+	 * @return: a valid move, or null if the position is not in the book
+	 */
+	protected Move probe(Board board, int color, Random random){
+		int[] moves = new int[32];
+		int[] weights = new int[32];
+		int count = candidates(board, color, moves, weights);
+		int total = 0;
+		for (int i = 0; i < count; i++){
+			total += weights[i];
+		}
+		if (count == 0 || total == 0){
+			return null;
+		}
+		int chosen = 0;
+		if (random != null){
+			int r = random.nextInt(total);
+			while (r >= weights[chosen]){
+				r -= weights[chosen];
+				chosen++;
+			}
+		}
+		Move m = PackedMove.unpack(moves[chosen]);
+		return board.isValidMove(m, color) ? m : null;
+	}
+
+	/**
+	 * Builds books by searching positions.  Positions are merged by canonical
+	 * hash, and the weight of a candidate is the sum of the depths at which it
+	 * was the best move, over the last three iterations of the search.
+	 */
+	private static class Builder {
+		private final int plies;
+		private final int depth;
+		// A Searcher stores scores from its own color's point of view, so each
+		// color searches with a table of its own.
+		private final TranspositionTable[] tables = {new TranspositionTable(20, TranspositionTable.DEPTH_PREFERRED),
+				new TranspositionTable(20, TranspositionTable.DEPTH_PREFERRED)};
+		private final Searcher[] searchers = {new Searcher(Cell.BLACK), new Searcher(Cell.WHITE)};
+		private final HashMap<Long, HashMap<Integer, Integer>> book = new HashMap<Long, HashMap<Integer, Integer>>();
+		private final HashSet<Long> visited = new HashSet<Long>();
+		private int searched;
+
+		Builder(int plies, int depth){
+			this.plies = plies;
+			this.depth = depth;
+		}
+
+		/**
+		 * Helper method: the candidates of the given position in its own frame,
+		 * searching it first if it is not in the book yet
+		 */
+		private int[] candidates(Board board, int color){
+			int symmetry = canonicalSymmetry(board, color);
+			Long key = board.hash(color, symmetry);
+			HashMap<Integer, Integer> moves = book.get(key);
+			if (moves == null){
+				moves = new HashMap<Integer, Integer>();
+				for (int d = Math.max(1, depth - 2); d <= depth; d++){
+					searchers[color].setUp(board, tables[color], d, d, 0);
+					int m = PackedMove.reflect(PackedMove.pack(searchers[color].search()), symmetry);
+					Integer weight = moves.get(m);
+					moves.put(m, (weight == null) ? d : weight + d);
+				}
+				book.put(key, moves);
+				searched++;
+				if (searched % 50 == 0){
+					System.out.println(searched + " positions searched");
+				}
+			}
+			int[] result = new int[moves.size()];
+			int i = 0;
+			for (int m : moves.keySet()){
+				result[i++] = PackedMove.reflect(m, symmetry);
+			}
+			return result;
+		}
+
+		/**
+		 * Helper method: adds the positions below the given one that bookColor
+		 * can reach by following the book against any opponent moves
+		 */
+		private void expand(Board board, int color, int bookColor, int ply){
+			if (ply >= plies || board.networkId(Cell.BLACK) || board.networkId(Cell.WHITE)){
+				return;
+			}
+			int symmetry = canonicalSymmetry(board, color);
+			if (!visited.add(board.hash(color, symmetry))){
+				return;
+			}
+			int[] moves;
+			if (color == bookColor){
+				moves = candidates(board, color);
+			} else {
+				int[] buffer = new int[512];
+				moves = Arrays.copyOf(buffer, board.generateMoves(color, buffer));
+			}
+			for (int m : moves){
+				board.action(m, color);
+				expand(board, 1 - color, bookColor, ply + 1);
+				board.undo(m, color);
+			}
+		}
+
+		/**
+		 * Helper method: writes the book, sorted by key and then by weight
+		 */
+		private void write(File file) throws IOException {
+			ArrayList<long[]> rows = new ArrayList<long[]>();
+			for (Map.Entry<Long, HashMap<Integer, Integer>> position : book.entrySet()){
+				for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()){
+					rows.add(new long[] {position.getKey(), move.getKey(), Math.min(MAX_WEIGHT, move.getValue())});
+				}
+			}
+			java.util.Collections.sort(rows, new java.util.Comparator<long[]>() {
+				public int compare(long[] a, long[] b) {
+					if (a[0] != b[0]){
+						return (a[0] < b[0]) ? -1 : 1;
+					}
+					return (int) (b[2] - a[2]);
+				}
+			});
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(rows.size());
+				for (long[] row : rows){
+					out.writeLong(row[0]);
+					out.writeInt(((int) row[1] << 16) | (int) row[2]);
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	public static void main(String args[]) throws IOException {
+		if (args.length >= 2 && args[0].equals("build")){
+			int plies = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+			int depth = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+			Builder builder = new Builder(plies, depth);
+			long start = System.currentTimeMillis();
+			builder.expand(new Board(), Cell.WHITE, Cell.WHITE, 0);
+			builder.visited.clear();
+			builder.expand(new Board(), Cell.WHITE, Cell.BLACK, 0);
+			builder.write(new File(args[1]));
+			OpeningBook book = open(new File(args[1]));
+			System.out.println(builder.searched + " positions, " + book.size() + " moves, "
+					+ (System.currentTimeMillis() - start) / 1000 + " s");
+		} else if (args.length >= 2 && args[0].equals("show")){
+			OpeningBook book = open(new File(args[1]));
+			for (int i = 0; i < book.entries; i++){
+				int value = book.buffer.getInt(HEADER + i * ENTRY + 8);
+				System.out.println(String.format("%016x %s %d", book.buffer.getLong(HEADER + i * ENTRY),
+						PackedMove.unpack(value >>> 16), value & MAX_WEIGHT));
+			}
+		} else {
+			System.out.println("usage: java player.OpeningBook build file [plies] [depth]");
+			System.out.println("       java player.OpeningBook show file");
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/* PackedMove.java */
+
+package player;
+
+/**
+ * Static helpers for moves packed into an int, so they can be stored in
+ * arrays and tables without allocating Move objects.
+ *
+ * Bits 0-5 hold the destination square (x*8 + y), bits 6-11 the source square
+ * of a STEP move, and bits 12-13 the move kind.  0 is used as "no move".
+ */
+final class PackedMove {
+	protected final static int NONE = 0;
+
+	private PackedMove(){
+	}
+
+	/**
+	 * packs an add move to the given square
+	 * @param to: the destination square
+	 */
+	protected static int add(int to){
+		return (Move.ADD << 12) | to;
+	}
+
+	/**
+	 * packs a step move between the given squares
+	 * @param to: the destination square
+	 * @param from: the source square
+	 */
+	protected static int step(int to, int from){
+		return (Move.STEP << 12) | (from << 6) | to;
+	}
+
+	/**
+	 * packs the given move
+	 * @param move: a Move, or null
+	 * @return: the packed move; NONE for null or a QUIT move
+	 */
+	protected static int pack(Move move){
+		if (move == null){
+			return NONE;
+		} else if (move.moveKind == Move.ADD){
+			return add((move.x1 << 3) | move.y1);
+		} else if (move.moveKind == Move.STEP){
+			return step((move.x1 << 3) | move.y1, (move.x2 << 3) | move.y2);
+		}
+		return NONE;
+	}
+
+	/**
+	 * unpacks the given move
+	 * @param move: a packed move
+	 * @return: a new Move, or null for NONE
+	 */
+	protected static Move unpack(int move){
+		int to = to(move);
+		if (kind(move) == Move.ADD){
+			return new Move(to >>> 3, to & 7);
+		} else if (kind(move) == Move.STEP){
+			int from = from(move);
+			return new Move(to >>> 3, to & 7, from >>> 3, from & 7);
+		}
+		return null;
+	}
+
+	/**
+	 * reflects the given move by one of Board.SYMMETRIES
+	 * @param move: a packed move
+	 * @param symmetry: the mask XORed into its squares
+	 * @return: the reflected move; NONE stays NONE
+	 */
+	protected static int reflect(int move, int symmetry){
+		if (kind(move) == Move.ADD){
+			return add(to(move) ^ symmetry);
+		} else if (kind(move) == Move.STEP){
+			return step(to(move) ^ symmetry, from(move) ^ symmetry);
+		}
+		return move;
+	}
+
+	/**
+	 * @return: the kind of the packed move: Move.ADD, Move.STEP or Move.QUIT
+	 */
+	protected static int kind(int move){
+		return move >>> 12;
+	}
+
+	/**
+	 * @return: the destination square of the packed move
+	 */
+	protected static int to(int move){
+		return move & 63;
+	}
+
+	/**
+	 * @return: the source square of a packed STEP move
+	 */
+	protected static int from(int move){
+		return (move >>> 6) & 63;
+	}
+}
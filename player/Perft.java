@@ -0,0 +1,235 @@
+/* Perft.java */
+
+package player;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import list.DList;
+import list.InvalidNodeException;
+import list.ListNode;
+
+/**
+ *  Counts the leaves of the move tree below a position ("perft"), to check the
+ *  move generator against known counts and to time it.  Moves come from
+ *  Board.listValidMove and are played with action and undo; as in chess
+ *  perft, a position is not treated as the end of the game when it has a
+ *  network.
+ *
+ *  Usage: java player.Perft [threads]
+ *             runs the suite of known counts
+ *         java player.Perft divide depth [-threads] [moves...]
+ *             prints the count below each move of the position reached by the
+ *             given moves (written as in positions.txt, White first)
+ */
+final class Perft {
+
+	/**
+	 * The suite: the moves leading to a position, the depth, and the number of
+	 * leaves at that depth.  The positions after 10 and 20 plies come from
+	 * seeded random games; the last two are step-phase positions of the
+	 * benchmark corpus.  The counts agree with CellBoard's generator.
+	 */
+	private final static String[][] SUITE = {
+		{"", "1", "48"},
+		{"", "2", "2268"},
+		{"", "3", "104904"},
+		{"", "4", "4773960"},
+		{"14 10 06 26 53 64 61 24 22 40", "3", "34464"},
+		{"46 27 44 16 31 62 66 47 63 14 25 40 05 10 71 22 03 55 02 34", "3", "8371495"},
+		{"53 33 05 61 21 27 24 22 11 52 62 65 35 15 41 14 74 67 56 17", "3", "2019273"},
+		{"05 62 03 56 35 46 43 27 66 52 26 25 06 12 53 32 76 30 61 13 7103 5756 4243", "3", "3170006"},
+	};
+
+	private Perft(){
+	}
+
+	/**
+	 * counts the move sequences of the given length from the given position
+	 * @param board: the position; it is the same after the call
+	 * @param color: the color to move
+	 * @param depth: the length of the sequences
+	 * @return: the number of sequences
+	 */
+	protected static long perft(Board board, int color, int depth){
+		if (depth == 0){
+			return 1;
+		}
+		long count = 0;
+		try {
+			DList moves = board.listValidMove(color);
+			for (ListNode node = moves.front(); node.isValidNode(); node = node.next()){
+				Move m = (Move) node.item();
+				if (depth == 1){
+					count++;
+					continue;
+				}
+				board.action(m, color);
+				count += perft(board, 1 - color, depth - 1);
+				board.undo(m, color);
+			}
+		} catch (InvalidNodeException e){
+		}
+		return count;
+	}
+
+	/**
+	 * counts the same sequences as perft, using generateMoves with one buffer
+	 * per ply; the two must agree
+	 * @param buffers: at least depth + 1 buffers of 512 moves
+	 */
+	protected static long perftPacked(Board board, int color, int depth, int[][] buffers){
+		if (depth == 0){
+			return 1;
+		}
+		int[] moves = buffers[depth];
+		int n = board.generateMoves(color, moves);
+		if (depth == 1){
+			return n;
+		}
+		long count = 0;
+		for (int i = 0; i < n; i++){
+			board.action(moves[i], color);
+			count += perftPacked(board, 1 - color, depth - 1, buffers);
+			board.undo(moves[i], color);
+		}
+		return count;
+	}
+
+	/**
+	 * counts the move sequences of the given length below each move of the
+	 * given position, searching the root moves on several threads
+	 * @param board: the position; it is not changed
+	 * @param color: the color to move
+	 * @param depth: the length of the sequences, at least 1
+	 * @param threads: the number of threads; 1 counts on the calling thread
+	 * @return: the root moves, in listValidMove order, and their counts
+	 */
+	protected static Object[][] divide(final Board board, final int color, final int depth, int threads){
+		DList moves = board.listValidMove(color);
+		Object[][] result = new Object[moves.length()][];
+		ExecutorService pool = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			Future<?>[] running = new Future<?>[result.length];
+			ListNode node = moves.front();
+			for (int i = 0; i < result.length; i++, node = node.next()){
+				final Move m = (Move) node.item();
+				result[i] = new Object[] {m, null};
+				if (pool == null){
+					board.action(m, color);
+					result[i][1] = perft(board, 1 - color, depth - 1);
+					board.undo(m, color);
+				} else {
+					running[i] = pool.submit(new Callable<Long>() {
+						public Long call() {
+							Board copy = new Board(board);
+							copy.action(m, color);
+							return perft(copy, 1 - color, depth - 1);
+						}
+					});
+				}
+			}
+			for (int i = 0; pool != null && i < result.length; i++){
+				result[i][1] = running[i].get();
+			}
+		} catch (InvalidNodeException e){
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		} finally {
+			if (pool != null){
+				pool.shutdown();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * counts the move sequences of the given length, dividing the work over
+	 * the root moves
+	 * @param threads: the number of threads; 1 counts on the calling thread
+	 */
+	protected static long perft(Board board, int color, int depth, int threads){
+		if (depth == 0){
+			return 1;
+		}
+		long count = 0;
+		for (Object[] entry : divide(board, color, depth, threads)){
+			count += (Long) entry[1];
+		}
+		return count;
+	}
+
+	/**
+	 * Helper method: plays the given moves from an empty board
+	 * @param board: an empty board
+	 * @param moves: moves in the positions.txt notation, White first
+	 * @return: the color to move afterwards
+	 */
+	private static int play(Board board, String[] moves){
+		int color = Cell.WHITE;
+		for (String move : moves){
+			if (move.length() > 0){
+				board.action(Corpus.parseMove(move), color);
+				color = 1 - color;
+			}
+		}
+		return color;
+	}
+
+	public static void main(String args[]){
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 0 && args[0].equals("divide")){
+			int depth = Integer.parseInt(args[1]);
+			int first = 2;
+			if (args.length > 2 && args[2].startsWith("-")){
+				threads = Integer.parseInt(args[2].substring(1));
+				first = 3;
+			}
+			Board board = new Board();
+			String[] moves = new String[args.length - first];
+			System.arraycopy(args, first, moves, 0, moves.length);
+			int color = play(board, moves);
+			long start = System.nanoTime();
+			long total = 0;
+			for (Object[] entry : divide(board, color, depth, threads)){
+				System.out.println(entry[0] + ": " + entry[1]);
+				total += (Long) entry[1];
+			}
+			long nanos = System.nanoTime() - start;
+			System.out.println("total " + total + " in " + nanos / 1000000 + " ms, "
+					+ (long) (total * 1e9 / nanos) + " leaves/s");
+			return;
+		}
+		if (args.length > 0){
+			threads = Integer.parseInt(args[0]);
+		}
+
+		int failures = 0;
+		int[][] buffers = new int[8][512];
+		for (String[] test : SUITE){
+			Board board = new Board();
+			int color = play(board, test[0].split(" "));
+			int depth = Integer.parseInt(test[1]);
+			long expected = Long.parseLong(test[2]);
+			long start = System.nanoTime();
+			long count = perft(board, color, depth);
+			long serial = System.nanoTime() - start;
+			start = System.nanoTime();
+			long parallel = perft(board, color, depth, threads);
+			long parallelNanos = System.nanoTime() - start;
+			long packed = perftPacked(board, color, depth, buffers);
+			boolean ok = count == expected && parallel == expected && packed == expected;
+			if (!ok){
+				failures++;
+			}
+			System.out.println((ok ? "ok   " : "FAIL ") + "perft(" + depth + ") after "
+					+ (test[0].length() == 0 ? 0 : test[0].split(" ").length) + " moves: " + count + " (parallel " + parallel + ", generateMoves " + packed + ", expected "
+					+ expected + "), " + (long) (count * 1e9 / serial) + " leaves/s, "
+					+ (long) (parallel * 1e9 / parallelNanos) + " leaves/s on " + threads + " threads");
+		}
+		System.out.println(failures == 0 ? "all counts match" : failures + " counts do not match");
+	}
+}
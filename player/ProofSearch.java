@@ -0,0 +1,199 @@
+/* ProofSearch.java */
+
+package player;
+
+/**
+ *  A proof-number search that decides whether the color to move can force a
+ *  network within a given number of plies.  The tree is grown one leaf at a
+ *  time below the most-proving node, the leaf that is cheapest to prove or
+ *  disprove; a node is proven when its proof number reaches 0 and disproven
+ *  when its disproof number does.  The search stops when the root is decided
+ *  or the node budget is used up, so its memory is bounded by the budget.
+ *
+ *  A move that completes a network for the opponent of the mover loses, even
+ *  if it also completes one for the mover.  Positions are not merged by
+ *  hash, so a position reached by two move orders is searched twice.
+ */
+class ProofSearch {
+	protected final static int PROVEN = 1;
+	protected final static int DISPROVEN = -1;
+	protected final static int UNKNOWN = 0;
+
+	private final static int INFINITY = Integer.MAX_VALUE / 2;
+	private final static int MAX_MOVES = 512;
+
+	/**
+	 * A node of the proof tree: the move that leads to it, its proof and
+	 * disproof numbers, and its children once it has been expanded.
+	 */
+	private static class Node {
+		final int move;
+		int proof = 1;
+		int disproof = 1;
+		Node[] children;
+
+		Node(int move){
+			this.move = move;
+		}
+	}
+
+	private final int maxNodes;
+	private final int maxPly;
+	private final int[] buffer = new int[MAX_MOVES];
+	private Board board;
+	private int attacker;
+	protected int nodes;
+	protected int move;
+	protected long timeLimit; // milliseconds one call of solve may take; 0 for no limit
+
+	/**
+	 * Creates a solver.
+	 * @param maxNodes: the most tree nodes one call of solve may create
+	 * @param maxPly: the most moves, by both colors, that a proof may take;
+	 * a line that reaches it without a network counts as a failed attack
+	 */
+	protected ProofSearch(int maxNodes, int maxPly){
+		this.maxNodes = maxNodes;
+		this.maxPly = maxPly;
+	}
+
+	/**
+	 * tries to prove that the given color can force a network
+	 * @param position: the position, with color to move; it is not changed
+	 * @param color: the attacking color
+	 * @return: PROVEN if color can force a network within maxPly moves, with
+	 * the first move of the proof left in move; DISPROVEN if it cannot; UNKNOWN
+	 * if the node budget or timeLimit ran out first
+	 */
+	protected int solve(Board position, int color){
+		if (board == null){
+			board = new Board(position);
+		} else {
+			board.copyFrom(position);
+		}
+		attacker = color;
+		nodes = 1;
+		move = PackedMove.NONE;
+		Node root = new Node(PackedMove.NONE);
+		Node[] path = new Node[maxPly + 1];
+		long deadline = (timeLimit > 0) ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+		for (int walks = 1; root.proof != 0 && root.disproof != 0 && nodes < maxNodes; walks++){
+			if ((walks & 63) == 0 && System.currentTimeMillis() >= deadline){
+				break;
+			}
+			// Walk down to the most-proving leaf, playing the moves on the way.
+			Node node = root;
+			int ply = 0;
+			path[0] = root;
+			while (node.children != null){
+				node = select(node, ply);
+				board.action(node.move, colorAt(ply));
+				path[++ply] = node;
+			}
+			expand(node, ply);
+			// Walk back up, updating the numbers of every node on the path.
+			for (; ply > 0; ply--){
+				update(path[ply], ply);
+				board.undo(path[ply].move, colorAt(ply - 1));
+			}
+			update(root, 0);
+		}
+		if (root.proof == 0){
+			for (Node child : root.children){
+				if (child.proof == 0){
+					move = child.move;
+					break;
+				}
+			}
+			return PROVEN;
+		}
+		return (root.disproof == 0) ? DISPROVEN : UNKNOWN;
+	}
+
+	/**
+	 * Helper method: the color to move at the given ply
+	 */
+	private int colorAt(int ply){
+		return ((ply & 1) == 0) ? attacker : 1 - attacker;
+	}
+
+	/**
+	 * Helper method: the child to descend into: the one with the smallest
+	 * proof number where the attacker moves, the one with the smallest
+	 * disproof number where the defender moves.  Decided children are skipped;
+	 * an undecided node always has an undecided child.
+	 */
+	private static Node select(Node node, int ply){
+		Node best = null;
+		for (Node child : node.children){
+			if (child.proof == 0 || child.disproof == 0){
+				continue;
+			}
+			if (best == null || ((ply & 1) == 0 ? child.proof < best.proof : child.disproof < best.disproof)){
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Helper method: creates the children of a leaf and scores each one that
+	 * ends the game; the leaf's own numbers are updated on the way back up
+	 * @param node: the leaf, whose position is on the board
+	 * @param ply: its distance from the root
+	 */
+	private void expand(Node node, int ply){
+		int mover = colorAt(ply);
+		int count = board.generateMoves(mover, buffer);
+		node.children = new Node[count];
+		nodes += count;
+		for (int i = 0; i < count; i++){
+			Node child = new Node(buffer[i]);
+			node.children[i] = child;
+			board.action(buffer[i], mover);
+			int winner = -1;
+			if (board.networkId(1 - mover)){
+				winner = 1 - mover;
+			} else if (board.networkId(mover)){
+				winner = mover;
+			}
+			board.undo(buffer[i], mover);
+			if (winner == attacker){
+				child.proof = 0;
+				child.disproof = INFINITY;
+			} else if (winner >= 0 || ply + 1 >= maxPly){
+				child.proof = INFINITY;
+				child.disproof = 0;
+			}
+		}
+		if (count == 0){
+			node.proof = INFINITY;
+			node.disproof = 0;
+		}
+	}
+
+	/**
+	 * Helper method: recomputes the numbers of an expanded node from its
+	 * children, and drops the children of a decided node other than the root;
+	 * select never returns to it
+	 */
+	private void update(Node node, int ply){
+		int min = INFINITY;
+		int sum = 0;
+		boolean attacking = (ply & 1) == 0;
+		if (node.children.length == 0){
+			return;
+		}
+		for (Node child : node.children){
+			int minimized = attacking ? child.proof : child.disproof;
+			int summed = attacking ? child.disproof : child.proof;
+			min = Math.min(min, minimized);
+			sum = Math.min(INFINITY, sum + summed);
+		}
+		node.proof = attacking ? min : sum;
+		node.disproof = attacking ? sum : min;
+		if (ply > 0 && (node.proof == 0 || node.disproof == 0)){
+			node.children = null;
+		}
+	}
+}
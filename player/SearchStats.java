@@ -0,0 +1,194 @@
+/* SearchStats.java */
+
+package player;
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ *  Counts what the searchers of every MachinePlayer in this JVM do, and
+ *  publishes the totals as the MXBean player:type=SearchStats.  Each
+ *  chooseMove is also committed as a player.ChooseMove JFR event.
+ *
+ *  Counting is off unless the JVM is started with -Dplayer.stats=true.
+ *  ENABLED is a static final, so once this class is initialized the JIT
+ *  treats it as a constant and drops the counting code in Searcher and Board
+ *  entirely; the searchers count into plain fields of their own, and their
+ *  counts are added here once per search.
+ */
+final class SearchStats implements SearchStatsMXBean {
+	protected final static boolean ENABLED = Boolean.getBoolean("player.stats");
+	protected final static SearchStats INSTANCE = new SearchStats();
+
+	static {
+		if (ENABLED){
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+						new ObjectName("player:type=SearchStats"));
+			} catch (Exception e){
+				System.err.println("SearchStats: cannot register the MXBean: " + e);
+			}
+		}
+	}
+
+	private long moves;
+	private long searches;
+	private long nodes;
+	private long quiescenceNodes;
+	private long evaluations;
+	private long networkChecks;
+	private long cutoffs;
+	private long firstMoveCutoffs;
+	private long expanded;
+	private long generated;
+	private long generationNanos;
+	private long tableProbes;
+	private long tableHits;
+	private long searchNanos;
+	private int lastDepth;
+	private int lastSelectiveDepth;
+	private long lastNodes;
+	private long lastNanos;
+
+	private SearchStats(){
+	}
+
+	/**
+	 * adds the counts of a finished search to the totals
+	 * @param searcher: a Searcher whose search has returned
+	 * @param last: true if the search is the one a move was chosen by, whose
+	 * depth and speed are reported as the last search
+	 */
+	protected synchronized void record(Searcher searcher, boolean last){
+		searches++;
+		nodes += searcher.nodes;
+		quiescenceNodes += searcher.quiescenceNodes;
+		evaluations += searcher.evaluations;
+		networkChecks += searcher.networkChecks;
+		cutoffs += searcher.cutoffs;
+		firstMoveCutoffs += searcher.firstMoveCutoffs;
+		expanded += searcher.expanded;
+		generated += searcher.generated;
+		generationNanos += searcher.generationNanos;
+		tableProbes += searcher.tableProbes;
+		tableHits += searcher.tableHits;
+		searchNanos += searcher.searchNanos;
+		if (last){
+			lastDepth = searcher.completedDepth;
+			lastSelectiveDepth = searcher.selectiveDepth;
+			lastNodes = searcher.nodes;
+			lastNanos = searcher.searchNanos;
+		}
+	}
+
+	/**
+	 * counts a move chosen by a MachinePlayer
+	 */
+	protected synchronized void recordMove(){
+		moves++;
+	}
+
+	/**
+	 * Helper method: a / b, or 0 if b is 0
+	 */
+	private static double ratio(double a, double b){
+		return (b == 0) ? 0 : a / b;
+	}
+
+	public synchronized long getMoves(){
+		return moves;
+	}
+
+	public synchronized long getSearches(){
+		return searches;
+	}
+
+	public synchronized long getNodes(){
+		return nodes;
+	}
+
+	public synchronized long getQuiescenceNodes(){
+		return quiescenceNodes;
+	}
+
+	public synchronized long getEvaluations(){
+		return evaluations;
+	}
+
+	public synchronized long getNetworkChecks(){
+		return networkChecks;
+	}
+
+	public synchronized long getBetaCutoffs(){
+		return cutoffs;
+	}
+
+	public synchronized double getFirstMoveCutoffRate(){
+		return ratio(firstMoveCutoffs, cutoffs);
+	}
+
+	public synchronized double getBranchingFactor(){
+		return ratio(generated, expanded);
+	}
+
+	public synchronized double getTableHitRate(){
+		return ratio(tableHits, tableProbes);
+	}
+
+	public synchronized double getMoveGenerationMillis(){
+		return generationNanos / 1e6;
+	}
+
+	public synchronized double getSearchMillis(){
+		return searchNanos / 1e6;
+	}
+
+	public synchronized double getNodesPerSecond(){
+		return ratio(nodes * 1e9, searchNanos);
+	}
+
+	public synchronized int getLastDepth(){
+		return lastDepth;
+	}
+
+	public synchronized int getLastSelectiveDepth(){
+		return lastSelectiveDepth;
+	}
+
+	public synchronized long getLastNodes(){
+		return lastNodes;
+	}
+
+	public synchronized double getLastNodesPerSecond(){
+		return ratio(lastNodes * 1e9, lastNanos);
+	}
+
+	public synchronized void reset(){
+		moves = 0;
+		searches = 0;
+		nodes = 0;
+		quiescenceNodes = 0;
+		evaluations = 0;
+		networkChecks = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		expanded = 0;
+		generated = 0;
+		generationNanos = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		searchNanos = 0;
+		lastDepth = 0;
+		lastSelectiveDepth = 0;
+		lastNodes = 0;
+		lastNanos = 0;
+	}
+
+	public synchronized String toString(){
+		return String.format("%d moves, %d searches, %d nodes (%d quiescence), %.0f nodes/s, "
+				+ "%d evaluations, %d networkId calls, %d cutoffs (%.2f on the first move), "
+				+ "branching factor %.1f, table hit rate %.2f, move generation %.1f of %.1f ms",
+				moves, searches, nodes, quiescenceNodes, getNodesPerSecond(), evaluations, networkChecks,
+				cutoffs, getFirstMoveCutoffRate(), getBranchingFactor(), getTableHitRate(),
+				getMoveGenerationMillis(), getSearchMillis());
+	}
+}
@@ -0,0 +1,105 @@
+/* SearchStatsMXBean.java */
+
+package player;
+
+/**
+ *  The management interface of SearchStats, registered as
+ *  player:type=SearchStats when the JVM runs with -Dplayer.stats=true.
+ *  Totals cover every search since the last reset; the "last" attributes
+ *  describe the most recent search by the first search thread of a player.
+ */
+public interface SearchStatsMXBean {
+
+	/**
+	 * @return: the number of moves chosen by MachinePlayers
+	 */
+	long getMoves();
+
+	/**
+	 * @return: the number of searches, counting each search thread and each
+	 * ponder search
+	 */
+	long getSearches();
+
+	/**
+	 * @return: the nodes searched, including quiescence nodes
+	 */
+	long getNodes();
+
+	/**
+	 * @return: the nodes searched past the horizon
+	 */
+	long getQuiescenceNodes();
+
+	/**
+	 * @return: the calls of Board.evaluation
+	 */
+	long getEvaluations();
+
+	/**
+	 * @return: the calls of Board.networkId, including answers from its cache
+	 */
+	long getNetworkChecks();
+
+	/**
+	 * @return: the beta cutoffs in minimax
+	 */
+	long getBetaCutoffs();
+
+	/**
+	 * @return: the share of beta cutoffs caused by the first move searched; the
+	 * closer to 1, the better the move ordering
+	 */
+	double getFirstMoveCutoffRate();
+
+	/**
+	 * @return: the average number of moves generated per node that was
+	 * expanded in minimax
+	 */
+	double getBranchingFactor();
+
+	/**
+	 * @return: the share of transposition table probes that found an entry
+	 */
+	double getTableHitRate();
+
+	/**
+	 * @return: the milliseconds spent generating moves in minimax
+	 */
+	double getMoveGenerationMillis();
+
+	/**
+	 * @return: the milliseconds spent searching, summed over the threads
+	 */
+	double getSearchMillis();
+
+	/**
+	 * @return: nodes per second of search time, per thread
+	 */
+	double getNodesPerSecond();
+
+	/**
+	 * @return: the depth of the last completed iteration of the last search
+	 */
+	int getLastDepth();
+
+	/**
+	 * @return: the deepest ply reached by quiescence in the last search
+	 */
+	int getLastSelectiveDepth();
+
+	/**
+	 * @return: the nodes of the last search
+	 */
+	long getLastNodes();
+
+	/**
+	 * @return: nodes per second of the last search
+	 */
+	double getLastNodesPerSecond();
+
+	/**
+	 * sets every counter back to 0
+	 */
+	void reset();
+}
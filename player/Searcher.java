@@ -0,0 +1,453 @@
+/* Searcher.java */
+
+package player;
+/**
+ *  One alpha-beta search worker of a MachinePlayer.  A Searcher searches its
+ *  own copy of the board and keeps its own killer and history tables; only the
+ *  transposition table is shared.  Several Searchers started on the same
+ *  position share their results through that table (Lazy SMP).
+ */
+class Searcher implements Runnable {
+	private final static int MAX_PLY = 64;
+	private final static int HISTORY_MAX = 1 << 22;
+	private final static int MAX_MOVES = 512;
+	protected final static int QUIESCENCE_DEPTH = 4;
+
+	private Board board;
+	private int color;
+	private int opponent;
+	private TranspositionTable table;
+	private int[][] killers = new int[MAX_PLY][2];
+	private int[] history = new int[1 << 14];
+	private int[][] moveBuffers = new int[MAX_PLY + 1][MAX_MOVES];
+	private int[][] orderBuffers = new int[MAX_PLY + 1][MAX_MOVES];
+	private int[] bestMoves = new int[MAX_PLY + 1];
+	private int firstDepth;
+	private int maxDepth;
+	private long timeLimit;
+	private long deadline;
+	private volatile boolean stopped;
+	private boolean aborted;
+	protected int rootDepth;
+	protected int completedDepth;
+	protected long nodes;
+	protected long quiescenceNodes;
+	protected int selectiveDepth;
+	protected int quiescenceDepth = QUIESCENCE_DEPTH;
+	protected long nodeLimit;
+	protected Progress progress;
+	protected Move result;
+	// Counters for SearchStats; only kept when SearchStats.ENABLED is set.
+	protected long evaluations;
+	protected long networkChecks;
+	protected long cutoffs;
+	protected long firstMoveCutoffs;
+	protected long expanded;
+	protected long generated;
+	protected long generationNanos;
+	protected long tableProbes;
+	protected long tableHits;
+	protected long searchNanos;
+
+	/**
+	 * Told about each iteration a search completes, on the searching thread.
+	 */
+	protected interface Progress {
+		/**
+		 * @param searcher: the Searcher, whose counters cover the search so far
+		 * @param depth: the depth of the iteration
+		 * @param score: its score for the Searcher's color
+		 */
+		void iteration(Searcher searcher, int depth, int score);
+	}
+
+	/**
+	 * Creates a searcher that chooses moves for the given color
+	 * @param color: the color of the MachinePlayer; either 0 or 1
+	 */
+	protected Searcher(int color){
+		this.color = color;
+		this.opponent = 1 - color;
+	}
+
+	/**
+	 * Prepares a search of the given position.  The position is copied, so the
+	 * caller may change its board while this Searcher runs.
+	 * @param position: the board to search, with this Searcher's color to move
+	 * @param table: the shared transposition table, or null
+	 * @param firstDepth: the depth of the first iteration
+	 * @param maxDepth: the depth of the last iteration
+	 * @param timeLimit: milliseconds allowed for the search; 0 for no limit
+	 */
+	protected void setUp(Board position, TranspositionTable table, int firstDepth, int maxDepth, long timeLimit){
+		if (board == null){
+			board = new Board(position);
+		} else {
+			board.copyFrom(position);
+		}
+		this.table = table;
+		this.firstDepth = Math.min(firstDepth, Math.min(maxDepth, MAX_PLY));
+		this.maxDepth = Math.min(maxDepth, MAX_PLY);
+		this.timeLimit = timeLimit;
+		stopped = false;
+	}
+
+	/**
+	 * Asks a running search to stop as soon as possible.  May be called from
+	 * any thread.
+	 */
+	protected void stop(){
+		stopped = true;
+	}
+
+	/**
+	 * Runs the search that was set up on another thread and leaves its move in
+	 * result.
+	 */
+	public void run(){
+		result = search();
+	}
+
+	/**
+	 * Searches depth firstDepth, firstDepth + 1, ... until maxDepth is reached,
+	 * the time limit or nodeLimit (if not 0) runs out or stop is called, and
+	 * returns the best move of the last completed iteration, whose depth is
+	 * left in completedDepth.  If no iteration completes, the best move found
+	 * so far in the first one is returned and completedDepth is 0.  With a time
+	 * limit, an iteration is not started once half of the time is gone, since
+	 * it would take longer than all of the earlier ones together.
+	 * @return Move: the best move found
+	 */
+	protected Move search(){
+		int alpha = Integer.MIN_VALUE;
+		int beta = Integer.MAX_VALUE;
+		long start = System.currentTimeMillis();
+		long startNanos = 0;
+		if (SearchStats.ENABLED){
+			startNanos = System.nanoTime();
+			clearCounters();
+		}
+		deadline = start + timeLimit;
+		aborted = false;
+		completedDepth = 0;
+		nodes = 0;
+		quiescenceNodes = 0;
+		selectiveDepth = 0;
+		for (int i = 0; i < MAX_PLY; i++){
+			killers[i][0] = PackedMove.NONE;
+			killers[i][1] = PackedMove.NONE;
+		}
+		for (int i = 0; i < history.length; i++){
+			history[i] >>= 1;
+		}
+		int bestMove = PackedMove.NONE;
+		for (rootDepth = firstDepth; rootDepth <= maxDepth; rootDepth++){
+			int score = minimax(MachinePlayer.MACHINE, alpha, beta, rootDepth);
+			if (aborted){
+				if (bestMove == PackedMove.NONE){
+					bestMove = bestMoves[0];
+				}
+				break;
+			}
+			bestMove = bestMoves[0];
+			completedDepth = rootDepth;
+			if (progress != null){
+				progress.iteration(this, rootDepth, score);
+			}
+			if (stopped){
+				break;
+			}
+			if (timeLimit > 0 && System.currentTimeMillis() - start >= timeLimit / 2){
+				break;
+			}
+		}
+		if (SearchStats.ENABLED){
+			searchNanos = System.nanoTime() - startNanos;
+			networkChecks = board.networkChecks;
+		}
+		return PackedMove.unpack(bestMove);
+	}
+
+	/**
+	 * Helper method: sets the counters for SearchStats back to 0
+	 */
+	private void clearCounters(){
+		evaluations = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		expanded = 0;
+		generated = 0;
+		generationNanos = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		board.networkChecks = 0;
+	}
+
+	/**
+	 * Helper method: checks the clock, the node limit and the stop flag every
+	 * 256 nodes and marks the search as aborted once any of them says so
+	 * @return: true if the current search should stop
+	 */
+	private boolean timeUp(){
+		nodes++;
+		if (!aborted && (nodes & 255) == 0
+				&& (stopped || nodeLimit > 0 && nodes >= nodeLimit
+						|| timeLimit > 0 && System.currentTimeMillis() >= deadline)){
+			aborted = true;
+		}
+		return aborted;
+	}
+
+	/**
+	 * Helper method: scores a move for move ordering.  The hash move comes
+	 * first, then the two killer moves of this ply, then moves by their history
+	 * score, with ties broken by the connections the move makes or cuts.
+	 * @param move: the packed move
+	 * @param hashMove: the best move stored for this position, or PackedMove.NONE
+	 * @param ply: the distance from the root
+	 * @param colorUsed: the color making the move
+	 * @return: the ordering score; higher is searched earlier
+	 */
+	private int orderScore(int move, int hashMove, int ply, int colorUsed){
+		if (move == hashMove){
+			return 1 << 30;
+		} else if (ply < MAX_PLY && move == killers[ply][0]){
+			return 1 << 29;
+		} else if (ply < MAX_PLY && move == killers[ply][1]){
+			return 1 << 28;
+		}
+		return (history[move] << 4) + Math.min(15, board.connectionsThrough(PackedMove.to(move), colorUsed));
+	}
+
+	/**
+	 * Helper method: moves the highest-scored move of moves[i..count-1] to index i
+	 */
+	private static void pickNext(int[] moves, int[] order, int i, int count){
+		int best = i;
+		for (int j = i + 1; j < count; j++){
+			if (order[j] > order[best]){
+				best = j;
+			}
+		}
+		if (best != i){
+			int t = moves[i];
+			moves[i] = moves[best];
+			moves[best] = t;
+			t = order[i];
+			order[i] = order[best];
+			order[best] = t;
+		}
+	}
+
+	/**
+	 * Helper method: remembers a move that caused a beta cutoff as a killer for
+	 * its ply and raises its history score
+	 * @param move: the packed move
+	 * @param ply: the distance from the root
+	 * @param searchDepth: the remaining depth when the cutoff happened
+	 */
+	private void recordCutoff(int move, int ply, int searchDepth){
+		if (ply < MAX_PLY && killers[ply][0] != move){
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		history[move] += searchDepth * searchDepth;
+		if (history[move] > HISTORY_MAX){
+			for (int i = 0; i < history.length; i++){
+				history[i] >>= 1;
+			}
+		}
+	}
+
+	/**
+	 * Helper method: scores a position at the horizon.  If the color to move can
+	 * complete a network it wins; if the other color threatens to complete one,
+	 * only the moves that stop every threat are searched, up to quiescenceDepth
+	 * plies past the horizon; otherwise the position is quiet and is evaluated.
+	 * @param side: MachinePlayer.MACHINE or MachinePlayer.OPPONENT
+	 * @param alpha: a score that MACHINE knows with certainty it can achieve
+	 * @param beta: a score no more than what the OPPONENT can achieve
+	 * @param depth: the number of plies past the horizon
+	 * @return int: the score of the position for this MachinePlayer
+	 */
+	private int quiesce(boolean side, int alpha, int beta, int depth){
+		int ply = rootDepth + depth;
+		quiescenceNodes++;
+		selectiveDepth = Math.max(selectiveDepth, ply);
+		if (depth >= quiescenceDepth || ply >= MAX_PLY){
+			if (SearchStats.ENABLED){
+				evaluations++;
+			}
+			return board.evaluation(color, ply);
+		}
+		int colorUsed = (side == MachinePlayer.MACHINE) ? color : opponent;
+		int[] moves = moveBuffers[ply];
+		if (board.generateThreats(colorUsed, null) > 0){
+			return (colorUsed == color) ? Integer.MAX_VALUE / (ply + 1) : Integer.MIN_VALUE / (ply + 1);
+		}
+		int[] threats = orderBuffers[ply];
+		int threatCount = board.generateThreats(1 - colorUsed, threats);
+		if (threatCount == 0){
+			if (SearchStats.ENABLED){
+				evaluations++;
+			}
+			return board.evaluation(color, ply);
+		}
+		int count = board.generateBlocks(colorUsed, threats, threatCount, moves);
+		if (count == 0){
+			return (colorUsed == color) ? Integer.MIN_VALUE / (ply + 2) : Integer.MAX_VALUE / (ply + 2);
+		}
+		int best = (side == MachinePlayer.MACHINE) ? alpha : beta;
+		for (int i = 0; i < count; i++){
+			board.action(moves[i], colorUsed);
+			int reply = quiesce(!side, alpha, beta, depth + 1);
+			board.undo(moves[i], colorUsed);
+			if (timeUp()){
+				return best;
+			}
+			if (side == MachinePlayer.MACHINE && reply > best){
+				best = reply;
+				alpha = reply;
+			} else if (side == MachinePlayer.OPPONENT && reply < best){
+				best = reply;
+				beta = reply;
+			}
+			if (alpha >= beta){
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * a helper function that finds the best move for MachinePlayer to take.
+	 * Moves are generated as packed ints into the buffers of this ply, so the
+	 * search does not allocate; the best move is left in bestMoves[ply].
+	 * @param side: indicates whose turn it is: either MachinePlayer.MACHINE 
+	 * or MachinePlayer.OPPONENT
+	 * @param alpha: a score that MACHINE knows with certainty it can achieve
+	 * @param beta: a score no more than what the OPPONENT can achieve
+	 * @param searchDepth: the depth that this minimax will search into
+	 * @return int: the score of the position for this MachinePlayer
+	 */
+	private int minimax(boolean side, int alpha, int beta, int searchDepth) { 
+		int ply = rootDepth - searchDepth;
+		bestMoves[ply] = PackedMove.NONE;
+		
+		if (board.networkId(color) || board.networkId(opponent)){
+			if (SearchStats.ENABLED){
+				evaluations++;
+			}
+			return board.evaluation(color, ply);
+		}
+		if (searchDepth == 0){
+			return quiesce(side, alpha, beta, 0);
+		}
+
+		int colorUsed = 0;
+		if (side == MachinePlayer.MACHINE){
+			colorUsed = color;
+		}
+		else{
+			colorUsed = opponent;
+		}
+
+		long key = 0;
+		int hashMove = PackedMove.NONE;
+		if (table != null){
+			key = board.hash(colorUsed);
+			long entry = table.probe(key);
+			hashMove = TranspositionTable.move(entry);
+			if (SearchStats.ENABLED){
+				tableProbes++;
+				if (entry != 0){
+					tableHits++;
+				}
+			}
+			if (entry != 0 && ply > 0 && TranspositionTable.depth(entry) >= searchDepth){
+				int score = TranspositionTable.fromTable(TranspositionTable.score(entry), ply);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER && score >= beta)
+						|| (bound == TranspositionTable.UPPER && score <= alpha)){
+					bestMoves[ply] = hashMove;
+					return score;
+				}
+			}
+		}
+
+		int alphaOrig = alpha;
+		int betaOrig = beta;
+		boolean improved = false;
+		int best;
+		if (side == MachinePlayer.MACHINE) {
+			best = alpha;
+		} else {
+			best = beta;
+		}
+
+		int[] moves = moveBuffers[ply];
+		int[] order = orderBuffers[ply];
+		long generationStart = SearchStats.ENABLED ? System.nanoTime() : 0;
+		int count = board.generateMoves(colorUsed, moves);
+		if (SearchStats.ENABLED){
+			generationNanos += System.nanoTime() - generationStart;
+			expanded++;
+			generated += count;
+		}
+		if (count == 0){
+			// A color with no legal move cannot improve on the bound it was
+			// given.  Nothing is printed: stdout may carry Engine's protocol.
+			return best;
+		}
+		for (int i = 0; i < count; i++){
+			order[i] = orderScore(moves[i], hashMove, ply, colorUsed);
+		}
+	  
+		for (int i = 0; i < count; i++) {		  
+			pickNext(moves, order, i, count);
+			if (i == 0){
+				bestMoves[ply] = moves[0];
+			}
+			board.action(moves[i], colorUsed);
+			int reply = minimax(!side, alpha, beta, searchDepth-1);
+			board.undo(moves[i], colorUsed);	      
+			if (timeUp()) {
+				return best;
+			}
+			if (side == MachinePlayer.MACHINE && reply > best) {
+				bestMoves[ply] = moves[i];
+				best = reply;
+				alpha = reply;
+				improved = true;
+			} else if (side == MachinePlayer.OPPONENT && reply < best) {
+				bestMoves[ply] = moves[i];
+				best = reply;
+				beta = reply;
+				improved = true;
+			}
+			if (alpha >= beta) { 
+				if (SearchStats.ENABLED){
+					cutoffs++;
+					if (i == 0){
+						firstMoveCutoffs++;
+					}
+				}
+				recordCutoff(moves[i], ply, searchDepth);
+				break; 
+			}
+		}
+
+		if (table != null){
+			int bound = TranspositionTable.EXACT;
+			if (best >= betaOrig){
+				bound = TranspositionTable.LOWER;
+			} else if (best <= alphaOrig){
+				bound = TranspositionTable.UPPER;
+			}
+			table.store(key, searchDepth, bound, TranspositionTable.toTable(best, ply),
+					improved ? bestMoves[ply] : PackedMove.NONE);
+		}
+		return best;
+	}
+}
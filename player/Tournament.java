@@ -0,0 +1,401 @@
+/* Tournament.java */
+
+package player;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Plays two MachinePlayer configurations against each other without the
+ *  GUI, many games at a time, and stops as soon as a sequential probability
+ *  ratio test (SPRT) can tell whether the first configuration is weaker than
+ *  elo0 or at least elo1 stronger than the second.
+ *
+ *  Every opening is played twice, once with each configuration as White.  An
+ *  opening is either a line of a position file in the positions.txt format,
+ *  or a few random plies from the empty board.  A game is lost by an invalid
+ *  move, by a QUIT, by a move that takes longer than the time limit plus the
+ *  margin, or by completing the opponent's network; it is drawn after
+ *  maxplies plies.  With -records, every finished game is appended to a
+ *  GameRecord file, with the configurations as its metadata and the time of
+ *  each move.
+ *
+ *  Usage: java player.Tournament [options] configA configB
+ *  A configuration is a comma-separated list of key=value settings:
+ *         depth=N     search depth (default 3, or 20 with a time limit)
+ *         time=MS     time limit per move (default 0, no limit)
+ *         q=N         quiescence depth (default Searcher.QUIESCENCE_DEPTH)
+ *         book=off    play without the opening book
+ *         solver=N    proof-number solver budget in nodes; 0 turns it off
+ *         threads=N   search threads per move (default 1)
+ *         hash=N      log2 of the transposition table slots (default 16)
+ *  Options: -games N (default 1000), -concurrency N (default: all cores),
+ *         -openings file, -random plies (default 4), -maxplies N (default 200),
+ *         -margin MS (default 1000), -elo0 E (default 0), -elo1 E (default 10),
+ *         -alpha A and -beta B (default 0.05 each), -seed N (default 1),
+ *         -records file
+ */
+final class Tournament {
+
+	/**
+	 * The settings of one player, parsed from a configuration string.
+	 */
+	private static class Config {
+		final String text;
+		int depth = -1;
+		long time;
+		int quiescence = Searcher.QUIESCENCE_DEPTH;
+		boolean book = true;
+		int solverNodes = 50000;
+		int threads = 1;
+		int hashBits = 16;
+
+		Config(String text){
+			this.text = text;
+			for (String setting : text.split(",")){
+				String[] kv = setting.split("=", 2);
+				if (kv.length != 2){
+					throw new IllegalArgumentException("not a key=value setting: " + setting);
+				}
+				if (kv[0].equals("depth")){
+					depth = Integer.parseInt(kv[1]);
+				} else if (kv[0].equals("time")){
+					time = Long.parseLong(kv[1]);
+				} else if (kv[0].equals("q")){
+					quiescence = Integer.parseInt(kv[1]);
+				} else if (kv[0].equals("book")){
+					book = !kv[1].equals("off");
+				} else if (kv[0].equals("solver")){
+					solverNodes = Integer.parseInt(kv[1]);
+				} else if (kv[0].equals("threads")){
+					threads = Integer.parseInt(kv[1]);
+				} else if (kv[0].equals("hash")){
+					hashBits = Integer.parseInt(kv[1]);
+				} else {
+					throw new IllegalArgumentException("unknown setting: " + kv[0]);
+				}
+			}
+			if (depth < 0){
+				depth = (time > 0) ? 20 : 3;
+			}
+		}
+
+		/**
+		 * @return: a new player of the given color with these settings; the
+		 * caller closes it after the game
+		 */
+		MachinePlayer create(int color){
+			MachinePlayer player = new MachinePlayer(color, depth, time,
+					new TranspositionTable(hashBits, TranspositionTable.DEPTH_PREFERRED));
+			player.setQuiescenceDepth(quiescence);
+			if (!book){
+				player.setOpeningBook(null);
+			}
+			player.setSolver(solverNodes, 5);
+			if (threads > 1){
+				player.setThreads(threads);
+			}
+			return player;
+		}
+	}
+
+	private final Config a;
+	private final Config b;
+	private final int maxPlies;
+	private final long margin;
+	private final GameRecord.Writer records;
+	private volatile boolean stopped;
+
+	private Tournament(Config a, Config b, int maxPlies, long margin, GameRecord.Writer records){
+		this.a = a;
+		this.b = b;
+		this.maxPlies = maxPlies;
+		this.margin = margin;
+		this.records = records;
+	}
+
+	/**
+	 * plays one game from the given opening
+	 * @param opening: the moves of the opening, White first
+	 * @param aIsWhite: true if configuration a plays White
+	 * @return: a's score: 1 for a win, 0.5 for a draw, 0 for a loss; or -1 if
+	 * the tournament was stopped before the game ended
+	 */
+	private double play(Move[] opening, boolean aIsWhite){
+		if (stopped){
+			return -1;
+		}
+		MachinePlayer[] players = new MachinePlayer[2];
+		players[Cell.WHITE] = (aIsWhite ? a : b).create(Cell.WHITE);
+		players[Cell.BLACK] = (aIsWhite ? b : a).create(Cell.BLACK);
+		try {
+			long[] limits = new long[2];
+			limits[Cell.WHITE] = (aIsWhite ? a : b).time;
+			limits[Cell.BLACK] = (aIsWhite ? b : a).time;
+			int aColor = aIsWhite ? Cell.WHITE : Cell.BLACK;
+			GameRecord game = new GameRecord();
+			game.metadata = "white=" + (aIsWhite ? a : b).text + " black=" + (aIsWhite ? b : a).text;
+			game.result = GameRecord.DRAW;
+			Board referee = new Board();
+			int color = Cell.WHITE;
+			for (Move m : opening){
+				players[color].forceMove(m);
+				players[1 - color].opponentMove(m);
+				referee.action(m, color);
+				game.add(PackedMove.pack(m), 0, 0);
+				color = 1 - color;
+			}
+			for (int ply = opening.length; ply < maxPlies; ply++){
+				if (stopped){
+					return -1;
+				}
+				long start = System.currentTimeMillis();
+				Move m = players[color].chooseMove();
+				long elapsed = System.currentTimeMillis() - start;
+				if (m == null || m.moveKind == Move.QUIT || !referee.isValidMove(m, color)
+						|| (limits[color] > 0 && elapsed > limits[color] + margin)){
+					game.result = 1 - color;
+					break;
+				}
+				referee.action(m, color);
+				game.add(PackedMove.pack(m), 0, (int) Math.max(elapsed, 1));
+				if (referee.networkId(1 - color)){
+					game.result = 1 - color;
+					break;
+				} else if (referee.networkId(color)){
+					game.result = color;
+					break;
+				}
+				players[1 - color].opponentMove(m);
+				color = 1 - color;
+			}
+			if (records != null){
+				synchronized (records){
+					try {
+						records.write(game);
+					} catch (IOException e){
+						throw new RuntimeException(e);
+					}
+				}
+			}
+			return (game.result == GameRecord.DRAW) ? 0.5 : (game.result == aColor) ? 1 : 0;
+		} finally {
+			players[Cell.WHITE].close();
+			players[Cell.BLACK].close();
+		}
+	}
+
+	/**
+	 * Helper method: the expected score of a player rated elo points above its
+	 * opponent
+	 */
+	private static double score(double elo){
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Helper method: the Elo difference that gives the expected score
+	 */
+	private static double elo(double score){
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/**
+	 * computes the log-likelihood ratio of elo1 against elo0 for the given
+	 * results, with the normal approximation to the trinomial distribution
+	 * (the generalized SPRT used by chess engine testing frameworks)
+	 * @return: the ratio; 0 until there is at least one win and one loss
+	 */
+	protected static double llr(int wins, int draws, int losses, double elo0, double elo1){
+		if (wins == 0 || losses == 0){
+			return 0;
+		}
+		double n = wins + draws + losses;
+		double mean = (wins + draws / 2.0) / n;
+		double variance = (wins + draws / 4.0) / n - mean * mean;
+		double s0 = score(elo0);
+		double s1 = score(elo1);
+		return (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance / n);
+	}
+
+	/**
+	 * Helper method: reads the openings of a position file, skipping each
+	 * line's name and color
+	 */
+	private static ArrayList<Move[]> readOpenings(String file) throws IOException {
+		ArrayList<Move[]> openings = new ArrayList<Move[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null){
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")){
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				Move[] moves = new Move[fields.length - 2];
+				for (int i = 2; i < fields.length; i++){
+					moves[i - 2] = Corpus.parseMove(fields[i]);
+				}
+				openings.add(moves);
+			}
+		} finally {
+			reader.close();
+		}
+		return openings;
+	}
+
+	/**
+	 * Helper method: an opening of the given number of random valid plies
+	 * that does not end the game
+	 */
+	protected static Move[] randomOpening(int plies, Random random){
+		int[] buffer = new int[512];
+		while (true){
+			Board board = new Board();
+			Move[] moves = new Move[plies];
+			int color = Cell.WHITE;
+			for (int i = 0; i < plies; i++){
+				int count = board.generateMoves(color, buffer);
+				int m = buffer[random.nextInt(count)];
+				board.action(m, color);
+				moves[i] = PackedMove.unpack(m);
+				color = 1 - color;
+			}
+			if (!board.networkId(Cell.WHITE) && !board.networkId(Cell.BLACK)){
+				return moves;
+			}
+		}
+	}
+
+	public static void main(String args[]) throws IOException, InterruptedException {
+		int games = 1000;
+		int concurrency = Runtime.getRuntime().availableProcessors();
+		String openingFile = null;
+		int randomPlies = 4;
+		int maxPlies = 200;
+		long margin = 1000;
+		double elo0 = 0;
+		double elo1 = 10;
+		double alpha = 0.05;
+		double beta = 0.05;
+		long seed = 1;
+		String recordFile = null;
+		ArrayList<String> configs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-games")){
+				games = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-concurrency")){
+				concurrency = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-openings")){
+				openingFile = args[++i];
+			} else if (args[i].equals("-random")){
+				randomPlies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-maxplies")){
+				maxPlies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-margin")){
+				margin = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-elo0")){
+				elo0 = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-elo1")){
+				elo1 = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-alpha")){
+				alpha = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-beta")){
+				beta = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-seed")){
+				seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-records")){
+				recordFile = args[++i];
+			} else {
+				configs.add(args[i]);
+			}
+		}
+		if (configs.size() != 2){
+			System.out.println("usage: java player.Tournament [options] configA configB");
+			System.out.println("       e.g. java player.Tournament -games 200 depth=3,q=4 depth=3,q=0");
+			return;
+		}
+		GameRecord.Writer records = (recordFile != null) ? new GameRecord.Writer(new File(recordFile)) : null;
+		final Tournament t = new Tournament(new Config(configs.get(0)), new Config(configs.get(1)), maxPlies, margin, records);
+		ArrayList<Move[]> openings = (openingFile != null) ? readOpenings(openingFile) : new ArrayList<Move[]>();
+		Random random = new Random(seed);
+		double lower = Math.log(beta / (1 - alpha));
+		double upper = Math.log((1 - beta) / alpha);
+		System.out.println("A: " + t.a.text + "  B: " + t.b.text + "  " + games + " games on " + concurrency
+				+ " threads, SPRT elo0 " + elo0 + " elo1 " + elo1 + ", bounds " + String.format("[%.2f, %.2f]", lower, upper));
+
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		CompletionService<Double> results = new ExecutorCompletionService<Double>(pool);
+		for (int i = 0; i < games; i += 2){
+			final Move[] opening = (openingFile != null)
+					? openings.get((i / 2) % openings.size()) : randomOpening(randomPlies, random);
+			for (int k = 0; k < 2 && i + k < games; k++){
+				final boolean aIsWhite = (k == 0);
+				results.submit(new Callable<Double>() {
+					public Double call() {
+						return t.play(opening, aIsWhite);
+					}
+				});
+			}
+		}
+		pool.shutdown();
+
+		int wins = 0;
+		int draws = 0;
+		int losses = 0;
+		String verdict = "no decision";
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < games; i++){
+			double result;
+			try {
+				result = results.take().get();
+			} catch (ExecutionException e){
+				throw new RuntimeException(e.getCause());
+			}
+			if (result < 0){
+				break;
+			} else if (result == 1){
+				wins++;
+			} else if (result == 0){
+				losses++;
+			} else {
+				draws++;
+			}
+			int n = wins + draws + losses;
+			double mean = (wins + draws / 2.0) / n;
+			double deviation = Math.sqrt(((wins + draws / 4.0) / n - mean * mean) / n);
+			double llr = llr(wins, draws, losses, elo0, elo1);
+			String line = String.format("%d games: +%d =%d -%d  elo %.1f +- %.1f  LLR %.2f",
+					n, wins, draws, losses, elo(Math.min(Math.max(mean, 1e-6), 1 - 1e-6)),
+					(elo(Math.min(mean + 1.96 * deviation, 1 - 1e-6)) - elo(Math.max(mean - 1.96 * deviation, 1e-6))) / 2, llr);
+			if (n % 10 == 0 || llr <= lower || llr >= upper){
+				System.out.println(line);
+			}
+			if (llr >= upper || llr <= lower){
+				verdict = (llr >= upper) ? "H1 accepted: A is " + elo1 + " Elo or more stronger than B"
+						: "H0 accepted: A is no more than " + elo0 + " Elo stronger than B";
+				t.stopped = true;
+				break;
+			}
+		}
+		System.out.println(verdict + " after " + (wins + draws + losses) + " games, "
+				+ (System.currentTimeMillis() - start) / 1000 + " s");
+		if (records != null){
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+			synchronized (records){
+				records.close();
+			}
+		}
+	}
+}
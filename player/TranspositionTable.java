@@ -0,0 +1,168 @@
+/* TranspositionTable.java */
+
+package player;
+
+/**
+ * A fixed-size hash table of search results, indexed by the Zobrist hash of a
+ * Board.  Each slot keeps one packed long holding the score, bound type, depth
+ * and best move of the search that stored it, and the 64-bit key XORed with
+ * that long.
+ *
+ * The table may be shared by several search threads without locking.  A slot
+ * that is read while another thread writes it fails the key check and counts
+ * as a miss.  The probe and hit counters are not synchronized, so they are
+ * only approximate while several threads search.
+ */
+public class TranspositionTable {
+	public final static int EXACT = 1;
+	public final static int LOWER = 2;
+	public final static int UPPER = 3;
+
+	public final static int ALWAYS_REPLACE = 0;
+	public final static int DEPTH_PREFERRED = 1;
+
+	private final static int WIN_BOUND = Integer.MAX_VALUE / 256;
+
+	private final long[] keys;
+	private final long[] data;
+	private final int mask;
+	private final int policy;
+	private long probes;
+	private long hits;
+
+	/**
+	 * Creates a table with 2^sizeLog2 slots.
+	 * @param sizeLog2: log2 of the number of slots; each slot takes 16 bytes
+	 * @param policy: ALWAYS_REPLACE or DEPTH_PREFERRED; a depth-preferred slot
+	 * is only overwritten by a search of at least the same depth, or by
+	 * another position
+	 */
+	public TranspositionTable(int sizeLog2, int policy){
+		keys = new long[1 << sizeLog2];
+		data = new long[1 << sizeLog2];
+		mask = (1 << sizeLog2) - 1;
+		this.policy = policy;
+	}
+
+	/**
+	 * looks up the given position
+	 * @param key: the Zobrist hash of the position
+	 * @return: the packed entry, or 0 if the position is not in the table
+	 */
+	protected long probe(long key){
+		int i = (int) key & mask;
+		long entry = data[i];
+		probes++;
+		if ((keys[i] ^ entry) == key && entry != 0){
+			hits++;
+			return entry;
+		}
+		return 0;
+	}
+
+	/**
+	 * stores a search result
+	 * @param key: the Zobrist hash of the position
+	 * @param depth: the depth that was searched below the position
+	 * @param bound: EXACT, LOWER or UPPER
+	 * @param score: the score, already converted with toTable
+	 * @param move: the best move, packed; PackedMove.NONE if unknown
+	 */
+	protected void store(long key, int depth, int bound, int score, int move){
+		int i = (int) key & mask;
+		long old = data[i];
+		boolean same = (keys[i] ^ old) == key;
+		if (policy == DEPTH_PREFERRED && !same && old != 0 && depth(old) > depth){
+			return;
+		}
+		if (move == PackedMove.NONE && same && old != 0){
+			move = move(old);
+		}
+		long entry = ((long) score << 32) | ((long) move << 10) | (depth << 2) | bound;
+		keys[i] = key ^ entry;
+		data[i] = entry;
+	}
+
+	/**
+	 * @return: the score of a packed entry, as stored
+	 */
+	protected static int score(long entry){
+		return (int) (entry >> 32);
+	}
+
+	/**
+	 * @return: the best move of a packed entry
+	 */
+	protected static int move(long entry){
+		return (int) (entry >>> 10) & 0x3FFF;
+	}
+
+	/**
+	 * @return: the depth of a packed entry
+	 */
+	protected static int depth(long entry){
+		return (int) (entry >>> 2) & 0xFF;
+	}
+
+	/**
+	 * @return: the bound type of a packed entry
+	 */
+	protected static int bound(long entry){
+		return (int) entry & 3;
+	}
+
+	/**
+	 * converts a score found at the given ply into a score to store.  A network
+	 * score (Integer.MAX_VALUE or MIN_VALUE divided by the number of steps from
+	 * the root) is rewritten relative to the stored position, so it can be read
+	 * back at another ply.
+	 * @param score: a score as returned by minimax
+	 * @param ply: the distance of the position from the root
+	 */
+	protected static int toTable(int score, int ply){
+		if (score >= WIN_BOUND){
+			return Integer.MAX_VALUE / Math.max(1, Integer.MAX_VALUE / score - ply);
+		} else if (score <= -WIN_BOUND){
+			return Integer.MIN_VALUE / Math.max(1, Integer.MIN_VALUE / score - ply);
+		}
+		return score;
+	}
+
+	/**
+	 * converts a stored score back into a score at the given ply
+	 * @param score: a score as stored by toTable
+	 * @param ply: the distance of the position from the root
+	 */
+	protected static int fromTable(int score, int ply){
+		if (score >= WIN_BOUND){
+			return Integer.MAX_VALUE / (Integer.MAX_VALUE / score + ply);
+		} else if (score <= -WIN_BOUND){
+			return Integer.MIN_VALUE / (Integer.MIN_VALUE / score + ply);
+		}
+		return score;
+	}
+
+	/**
+	 * empties the table and resets the hit counters
+	 */
+	public void clear(){
+		java.util.Arrays.fill(keys, 0);
+		java.util.Arrays.fill(data, 0);
+		probes = 0;
+		hits = 0;
+	}
+
+	/**
+	 * @return: the number of probes since the table was created or cleared
+	 */
+	public long probes(){
+		return probes;
+	}
+
+	/**
+	 * @return: the fraction of probes that found their position, between 0 and 1
+	 */
+	public double hitRate(){
+		return (probes == 0) ? 0 : (double) hits / probes;
+	}
+}
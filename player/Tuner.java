@@ -0,0 +1,348 @@
+/* Tuner.java */
+
+package player;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *  Tunes the weights of Board.evaluation from the results of recorded games
+ *  (Texel's method).  Each quiet position of a game is scored by the
+ *  logistic function of its evaluation, 1 / (1 + e^(-k * eval)), and the
+ *  weights are fitted to minimize the mean squared difference between that
+ *  score and the game's result for White.  k is fitted first, with the
+ *  current weights, so that the tuned weights stay in the units of the
+ *  hand-tuned ones.
+ *
+ *  The records are read again on every pass, so a corpus of any size fits;
+ *  each pass splits the games into batches whose loss and gradient are
+ *  computed in parallel.  A position is skipped if it is in the opening, has
+ *  a network, or if either color can complete a network in one move.
+ *
+ *  The records are GameRecord files; unfinished games are skipped.
+ *
+ *  Usage: java player.Tuner generate records games [depth] [plies]
+ *             plays games of MachinePlayers of the given depth (default 2)
+ *             from random openings of the given length (default 6) on all
+ *             cores and appends their records to the file
+ *         java player.Tuner tune records weights [epochs]
+ *             tunes the weights and writes them, for -Dplayer.weights=file
+ */
+final class Tuner {
+	private final static int BATCH = 256;
+	private final static int OPENING_PLIES = 6;
+	private final static int MAX_PLIES = 200;
+
+	/**
+	 * The sums of one batch of positions: their number, the squared error and
+	 * its gradient with respect to each weight.
+	 */
+	private static class Sums {
+		long positions;
+		double loss;
+		final double[] gradient = new double[Board.FEATURES];
+
+		void add(Sums other){
+			positions += other.positions;
+			loss += other.loss;
+			for (int i = 0; i < gradient.length; i++){
+				gradient[i] += other.gradient[i];
+			}
+		}
+	}
+
+	private final ExecutorService pool;
+	private final String records;
+
+	private Tuner(String records, int threads){
+		this.records = records;
+		pool = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Helper method: replays a batch of games and adds up the loss, and the
+	 * gradient if asked, over their quiet positions
+	 */
+	private static Sums evaluate(ArrayList<GameRecord> games, double[] weights, double k, boolean gradient){
+		Sums sums = new Sums();
+		int[] features = new int[Board.FEATURES];
+		for (GameRecord game : games){
+			double result = (game.result == GameRecord.DRAW) ? 0.5 : (game.result == GameRecord.WHITE_WINS) ? 1 : 0;
+			Board board = new Board();
+			int color = Cell.WHITE;
+			for (int i = 1; i <= game.plies; i++){
+				board.action(game.moves[i - 1], color);
+				color = 1 - color;
+				if (i <= OPENING_PLIES || board.networkId(Cell.WHITE) || board.networkId(Cell.BLACK)
+						|| board.generateThreats(Cell.WHITE, null) > 0 || board.generateThreats(Cell.BLACK, null) > 0){
+					continue;
+				}
+				board.features(Cell.WHITE, features);
+				double eval = 0;
+				for (int j = 0; j < features.length; j++){
+					eval += weights[j] * features[j];
+				}
+				double p = 1 / (1 + Math.exp(-k * eval));
+				double error = p - result;
+				sums.positions++;
+				sums.loss += error * error;
+				if (gradient){
+					double slope = 2 * error * p * (1 - p) * k;
+					for (int j = 0; j < features.length; j++){
+						sums.gradient[j] += slope * features[j];
+					}
+				}
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * streams the records once, evaluating batches of games on the pool with
+	 * a bounded number of batches in memory
+	 * @param weights: the weights to evaluate
+	 * @param k: the scale of the logistic function
+	 * @param gradient: true to compute the gradient as well as the loss
+	 * @return: the sums over all positions
+	 */
+	private Sums pass(final double[] weights, final double k, final boolean gradient) throws IOException, InterruptedException {
+		Sums total = new Sums();
+		ArrayDeque<Future<Sums>> running = new ArrayDeque<Future<Sums>>();
+		GameRecord.Reader reader = new GameRecord.Reader(new File(records));
+		try {
+			boolean more = true;
+			while (more){
+				final ArrayList<GameRecord> batch = new ArrayList<GameRecord>();
+				while (batch.size() < BATCH){
+					GameRecord game = new GameRecord();
+					more = reader.next(game);
+					if (!more){
+						break;
+					} else if (game.result != GameRecord.UNFINISHED){
+						batch.add(game);
+					}
+				}
+				running.add(pool.submit(new Callable<Sums>() {
+					public Sums call() {
+						return evaluate(batch, weights, k, gradient);
+					}
+				}));
+				while (running.size() > 4 * Runtime.getRuntime().availableProcessors()){
+					total.add(get(running.poll()));
+				}
+			}
+			while (!running.isEmpty()){
+				total.add(get(running.poll()));
+			}
+		} finally {
+			reader.close();
+		}
+		return total;
+	}
+
+	/**
+	 * Helper method: waits for a batch
+	 */
+	private static Sums get(Future<Sums> batch) throws InterruptedException {
+		try {
+			return batch.get();
+		} catch (ExecutionException e){
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Helper method: the mean loss of the given weights and scale
+	 */
+	private double loss(double[] weights, double k) throws IOException, InterruptedException {
+		Sums sums = pass(weights, k, false);
+		return sums.loss / Math.max(1, sums.positions);
+	}
+
+	/**
+	 * finds the scale k that best fits the given weights to the results, by a
+	 * golden-section search over log k
+	 */
+	private double fitScale(double[] weights) throws IOException, InterruptedException {
+		double low = Math.log(0.001);
+		double high = Math.log(10);
+		double ratio = (Math.sqrt(5) - 1) / 2;
+		double a = high - ratio * (high - low);
+		double b = low + ratio * (high - low);
+		double la = loss(weights, Math.exp(a));
+		double lb = loss(weights, Math.exp(b));
+		for (int i = 0; i < 24; i++){
+			if (la < lb){
+				high = b;
+				b = a;
+				lb = la;
+				a = high - ratio * (high - low);
+				la = loss(weights, Math.exp(a));
+			} else {
+				low = a;
+				a = b;
+				la = lb;
+				b = low + ratio * (high - low);
+				lb = loss(weights, Math.exp(b));
+			}
+		}
+		return Math.exp((low + high) / 2);
+	}
+
+	/**
+	 * tunes the weights by Adam gradient descent, one pass over the records
+	 * per step
+	 * @param weights: the starting weights; they are changed in place
+	 * @param k: the scale of the logistic function
+	 * @param epochs: the number of passes
+	 */
+	private void tune(double[] weights, double k, int epochs) throws IOException, InterruptedException {
+		double rate = 0.05;
+		double beta1 = 0.9;
+		double beta2 = 0.999;
+		double[] m = new double[weights.length];
+		double[] v = new double[weights.length];
+		for (int epoch = 1; epoch <= epochs; epoch++){
+			Sums sums = pass(weights, k, true);
+			for (int i = 0; i < weights.length; i++){
+				double g = sums.gradient[i] / Math.max(1, sums.positions);
+				m[i] = beta1 * m[i] + (1 - beta1) * g;
+				v[i] = beta2 * v[i] + (1 - beta2) * g * g;
+				double mHat = m[i] / (1 - Math.pow(beta1, epoch));
+				double vHat = v[i] / (1 - Math.pow(beta2, epoch));
+				weights[i] -= rate * mHat / (Math.sqrt(vHat) + 1e-9);
+			}
+			if (epoch % 10 == 0 || epoch == epochs){
+				System.out.println(String.format("epoch %d: loss %.6f over %d positions, weights %s",
+						epoch, sums.loss / Math.max(1, sums.positions), sums.positions, format(weights)));
+			}
+		}
+	}
+
+	/**
+	 * Helper method: the weights as "name value" pairs
+	 */
+	private static String format(double[] weights){
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < weights.length; i++){
+			s.append(i == 0 ? "" : ", ").append(Board.FEATURE_NAMES[i]).append(String.format(" %.3f", weights[i]));
+		}
+		return s.toString();
+	}
+
+	/**
+	 * plays one game between two MachinePlayers of the given depth
+	 * @return: the record of the game, with the time of each searched move
+	 */
+	private static GameRecord selfPlay(int depth, Move[] opening){
+		MachinePlayer[] players = {
+				new MachinePlayer(Cell.BLACK, depth, 0, new TranspositionTable(16, TranspositionTable.DEPTH_PREFERRED)),
+				new MachinePlayer(Cell.WHITE, depth, 0, new TranspositionTable(16, TranspositionTable.DEPTH_PREFERRED))};
+		for (MachinePlayer player : players){
+			player.setOpeningBook(null);
+		}
+		GameRecord game = new GameRecord();
+		game.metadata = "self-play depth=" + depth;
+		game.result = GameRecord.DRAW;
+		Board referee = new Board();
+		int color = Cell.WHITE;
+		for (int ply = 0; ply < MAX_PLIES; ply++){
+			Move m;
+			long start = System.currentTimeMillis();
+			if (ply < opening.length){
+				m = opening[ply];
+				players[color].forceMove(m);
+			} else {
+				m = players[color].chooseMove();
+			}
+			if (m == null || m.moveKind == Move.QUIT || !referee.isValidMove(m, color)){
+				game.result = 1 - color;
+				break;
+			}
+			referee.action(m, color);
+			players[1 - color].opponentMove(m);
+			game.add(PackedMove.pack(m), 0, (int) (System.currentTimeMillis() - start));
+			if (referee.networkId(1 - color)){
+				game.result = 1 - color;
+				break;
+			} else if (referee.networkId(color)){
+				game.result = color;
+				break;
+			}
+			color = 1 - color;
+		}
+		for (MachinePlayer player : players){
+			player.close();
+		}
+		return game;
+	}
+
+	public static void main(String args[]) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length >= 3 && args[0].equals("generate")){
+			int games = Integer.parseInt(args[2]);
+			final int depth = (args.length > 3) ? Integer.parseInt(args[3]) : 2;
+			int plies = (args.length > 4) ? Integer.parseInt(args[4]) : OPENING_PLIES;
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			Random random = new Random(System.nanoTime());
+			ArrayList<Future<GameRecord>> played = new ArrayList<Future<GameRecord>>();
+			for (int i = 0; i < games; i++){
+				final Move[] opening = Tournament.randomOpening(plies, random);
+				played.add(pool.submit(new Callable<GameRecord>() {
+					public GameRecord call() {
+						return selfPlay(depth, opening);
+					}
+				}));
+			}
+			pool.shutdown();
+			GameRecord.Writer out = new GameRecord.Writer(new File(args[1]));
+			try {
+				for (int i = 0; i < games; i++){
+					try {
+						out.write(played.get(i).get());
+					} catch (ExecutionException e){
+						throw new RuntimeException(e.getCause());
+					}
+					if ((i + 1) % 100 == 0){
+						System.out.println((i + 1) + " games played");
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} else if (args.length >= 3 && args[0].equals("tune")){
+			int epochs = (args.length > 3) ? Integer.parseInt(args[3]) : 100;
+			Tuner tuner = new Tuner(args[1], threads);
+			try {
+				double[] weights = Board.DEFAULT_WEIGHTS.clone();
+				double k = tuner.fitScale(weights);
+				System.out.println(String.format("k %.4f, loss %.6f with the default weights", k, tuner.loss(weights, k)));
+				tuner.tune(weights, k, epochs);
+				PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(args[2])));
+				try {
+					out.println("# Evaluation weights tuned by player.Tuner from " + args[1] + " (k " + k + ")");
+					for (int i = 0; i < weights.length; i++){
+						out.println(Board.FEATURE_NAMES[i] + " = " + weights[i]);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				tuner.pool.shutdown();
+			}
+		} else {
+			System.out.println("usage: java player.Tuner generate records games [depth] [plies]");
+			System.out.println("       java player.Tuner tune records weights [epochs]");
+		}
+	}
+}